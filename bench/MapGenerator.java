@@ -0,0 +1,165 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Generates random worlds in the map file format read by Environment.parseFiles.
+ * Obstacles are convex polygons placed without overlap inside a square boundary
+ * whose size is chosen so that the obstacles cover a given fraction of its area.
+ * The start and goal are placed in free space a given fraction of the boundary's
+ * diagonal apart.
+ * @author Andrew Goldin
+ */
+public class MapGenerator {
+
+	private int numObstacles, numVertices;
+	private float density, separation;
+	private Random random;
+
+	// generated world
+	private float size;
+	private ArrayList<float[]> obstacles;
+	private float[] centersX, centersY, radii;
+	private float startX, startY, goalX, goalY;
+
+	/**
+	 * Creates a generator for worlds with the given properties.
+	 * @param numObstacles the number of obstacles
+	 * @param numVertices the number of vertices of each obstacle, at least 3
+	 * @param density the fraction of the boundary's area covered by obstacles, below 0.5
+	 * @param separation the distance between start and goal, as a fraction of the boundary's diagonal
+	 * @param seed the seed for the random number generator
+	 */
+	public MapGenerator(int numObstacles, int numVertices, float density, float separation, long seed) {
+		this.numObstacles = numObstacles;
+		this.numVertices = Math.max(3, numVertices);
+		this.density = density;
+		this.separation = separation;
+		random = new Random(seed);
+	}
+
+	/**
+	 * Generates a world and writes it to a world file and a start/goal file.
+	 * @param worldFile the file to write the boundary and obstacles to
+	 * @param startGoalFile the file to write the start and goal points to
+	 */
+	public void write(String worldFile, String startGoalFile) throws IOException {
+		generate();
+		PrintWriter p = new PrintWriter(new BufferedWriter(new FileWriter(worldFile)));
+		p.println(obstacles.size() + 1);
+		p.println(4);
+		p.println(0.0f + " " + 0.0f);
+		p.println(size + " " + 0.0f);
+		p.println(size + " " + size);
+		p.println(0.0f + " " + size);
+		for (int i = 0; i < obstacles.size(); i++) {
+			float[] xy = obstacles.get(i);
+			p.println(xy.length / 2);
+			for (int j = 0; j < xy.length; j += 2) {
+				p.println(xy[j] + " " + xy[j + 1]);
+			}
+		}
+		p.close();
+
+		p = new PrintWriter(new BufferedWriter(new FileWriter(startGoalFile)));
+		p.println(startX + " " + startY);
+		p.print(goalX + " " + goalY);
+		p.close();
+	}
+
+	// places the obstacles, then the start and goal
+	private void generate() {
+		// obstacles of unit mean radius; a regular polygon of radius r has area
+		// k/2 sin(2pi/k) r^2, and radii vary by up to half the mean either way
+		double meanArea = numVertices / 2.0 * Math.sin(2.0 * Math.PI / numVertices) * (1.0 + 1.0 / 12.0);
+		size = (float) Math.sqrt(numObstacles * meanArea / Math.max(density, 1e-3));
+		obstacles = new ArrayList<float[]>();
+		centersX = new float[numObstacles];
+		centersY = new float[numObstacles];
+		radii = new float[numObstacles];
+
+		// keep room for the robot between obstacles so the world stays connected
+		float gap = 2.0f * Poly.ROBOT_DIAMETER;
+		for (int attempts = 0; obstacles.size() < numObstacles && attempts < 1000 * numObstacles; attempts++) {
+			float r = 0.5f + random.nextFloat();
+			float cx = r + gap + random.nextFloat() * (size - 2.0f * (r + gap));
+			float cy = r + gap + random.nextFloat() * (size - 2.0f * (r + gap));
+			if (isFree(cx, cy, r + gap)) {
+				int n = obstacles.size();
+				centersX[n] = cx;
+				centersY[n] = cy;
+				radii[n] = r;
+				obstacles.add(convexPolygon(cx, cy, r));
+			}
+		}
+
+		// start and goal in free space, as close as possible to the requested separation
+		float diagonal = (float) Math.sqrt(2.0) * size;
+		float target = separation * diagonal, bestError = Float.MAX_VALUE;
+		for (int attempts = 0; attempts < 10000 && bestError > 0.01f * diagonal; attempts++) {
+			float sx = random.nextFloat() * size, sy = random.nextFloat() * size;
+			float gx = random.nextFloat() * size, gy = random.nextFloat() * size;
+			if (!isFree(sx, sy, Poly.ROBOT_DIAMETER) || !isFree(gx, gy, Poly.ROBOT_DIAMETER)) continue;
+			if (Math.min(Math.min(sx, sy), Math.min(size - sx, size - sy)) < Poly.ROBOT_DIAMETER) continue;
+			if (Math.min(Math.min(gx, gy), Math.min(size - gx, size - gy)) < Poly.ROBOT_DIAMETER) continue;
+			float error = Math.abs((float) Math.hypot(gx - sx, gy - sy) - target);
+			if (error < bestError) {
+				bestError = error;
+				startX = sx;
+				startY = sy;
+				goalX = gx;
+				goalY = gy;
+			}
+		}
+	}
+
+	// determines whether a circle clears the bounding circles of all placed obstacles
+	private boolean isFree(float x, float y, float r) {
+		for (int i = 0; i < obstacles.size(); i++) {
+			float dx = x - centersX[i], dy = y - centersY[i], d = r + radii[i];
+			if (dx * dx + dy * dy < d * d) return false;
+		}
+		return true;
+	}
+
+	// a convex polygon with vertices at sorted random angles on a circle
+	private float[] convexPolygon(float cx, float cy, float r) {
+		double[] angles = new double[numVertices];
+		double start = random.nextDouble() * 2.0 * Math.PI;
+		for (int i = 0; i < numVertices; i++) {
+			// jitter each vertex within its own sector so the order, and convexity, is kept
+			angles[i] = start + 2.0 * Math.PI * (i + 0.25 + 0.5 * random.nextDouble()) / numVertices;
+		}
+		float[] xy = new float[2 * numVertices];
+		for (int i = 0; i < numVertices; i++) {
+			xy[2 * i] = cx + (float) (r * Math.cos(angles[i]));
+			xy[2 * i + 1] = cy + (float) (r * Math.sin(angles[i]));
+		}
+		return xy;
+	}
+
+	// main method
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("Usage: java MapGenerator <world file> <start/goal file> [-obstacles n]"
+					+ " [-vertices k] [-density d] [-separation s] [-seed n]");
+			System.exit(0);
+		}
+		int obstacles = 50, vertices = 4;
+		float density = 0.2f, separation = 0.8f;
+		long seed = 1;
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].equals("-obstacles")) obstacles = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-vertices")) vertices = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-density")) density = Float.parseFloat(args[++i]);
+			else if (args[i].equals("-separation")) separation = Float.parseFloat(args[++i]);
+			else if (args[i].equals("-seed")) seed = Long.parseLong(args[++i]);
+			else {
+				System.out.println("Unknown option " + args[i] + ", exiting");
+				System.exit(0);
+			}
+		}
+		new MapGenerator(obstacles, vertices, density, separation, seed).write(args[0], args[1]);
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,159 @@
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Times the main stages of the planner on generated worlds, reporting the mean
+ * time and the bytes allocated per operation. Each benchmark is run for a number
+ * of warmup iterations, whose results are discarded, and then measured.
+ * @author Andrew Goldin
+ */
+public class PlannerBenchmark {
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	// results are folded into this so the work cannot be optimized away
+	private static volatile int sink;
+
+	private int warmup, iterations;
+
+	/**
+	 * Creates a benchmark runner.
+	 * @param warmup the number of unmeasured iterations before each benchmark
+	 * @param iterations the number of measured iterations of each benchmark
+	 */
+	public PlannerBenchmark(int warmup, int iterations) {
+		this.warmup = warmup;
+		this.iterations = iterations;
+		THREADS.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	/**
+	 * One operation to be measured.
+	 */
+	private interface Operation {
+		int run() throws Exception;
+	}
+
+	/**
+	 * Runs every benchmark on a world and prints one line per benchmark.
+	 * @param worldFile the world file
+	 * @param startGoalFile the start/goal file
+	 * @param label a description of the world, printed with each result
+	 */
+	public void runAll(String worldFile, String startGoalFile, String label) throws Exception {
+		final Environment env = Environment.parseFiles(worldFile, startGoalFile);
+		env.setWorkers(1);
+		env.growObstacles(false);
+		final Poly[] grown = env.getGrownObstacles();
+		final Poly robot = env.getStartShape();
+		final Poly[] obstacles = env.getObstacles();
+
+		measure("Poly.grow", label, new Operation() {
+			public int run() {
+				int n = 0;
+				for (int i = 0; i < obstacles.length; i++) n += obstacles[i].grow(robot).numPoints();
+				return n;
+			}
+		});
+		measure("computeVisibilityGraph", label, new Operation() {
+			public int run() {
+				env.computeVisibilityGraph(grown, false);
+				return env.getVisibilityGraph().numEdges();
+			}
+		});
+		measure("computeVisibilityGraph(sweep)", label, new Operation() {
+			public int run() {
+				env.computeVisibilityGraph(grown, true);
+				return env.getVisibilityGraph().numEdges();
+			}
+		});
+
+		final Edge[] edges = env.getVisibilityEdges();
+		final Point startPoint = env.getStartPoint(), goalPoint = env.getGoalPoint();
+		measure("PathFinder(start, goal, edges)", label, new Operation() {
+			public int run() {
+				return new PathFinder(startPoint, goalPoint, edges).hashCode();
+			}
+		});
+		final PathFinder finder = new PathFinder(startPoint, goalPoint, edges);
+		measure("getShortestPath(dijkstra)", label, new Operation() {
+			public int run() {
+				Point[] path = finder.getShortestPath(false);
+				return path == null ? 0 : path.length;
+			}
+		});
+		measure("getShortestPath(A*)", label, new Operation() {
+			public int run() {
+				Point[] path = finder.getShortestPath(true);
+				return path == null ? 0 : path.length;
+			}
+		});
+		final PathFinder bidirectional = new PathFinder(startPoint, goalPoint, edges);
+		bidirectional.setBidirectional(true);
+		measure("getShortestPath(bi-dijkstra)", label, new Operation() {
+			public int run() {
+				Point[] path = bidirectional.getShortestPath(false);
+				return path == null ? 0 : path.length;
+			}
+		});
+		measure("getShortestPath(bi-A*)", label, new Operation() {
+			public int run() {
+				Point[] path = bidirectional.getShortestPath(true);
+				return path == null ? 0 : path.length;
+			}
+		});
+	}
+
+	// runs an operation through warmup and measurement and prints its time and allocation
+	private void measure(String name, String label, Operation op) throws Exception {
+		for (int i = 0; i < warmup; i++) {
+			sink += op.run();
+		}
+		long thread = Thread.currentThread().getId();
+		long bytes = THREADS.getThreadAllocatedBytes(thread);
+		long time = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			sink += op.run();
+		}
+		time = System.nanoTime() - time;
+		bytes = THREADS.getThreadAllocatedBytes(thread) - bytes;
+		System.out.printf("%-32s %-36s %12.3f ms/op %12.1f KB/op%n", name, label,
+				time / 1e6 / iterations, bytes / 1024.0 / iterations);
+	}
+
+	// main method
+	public static void main(String[] args) throws Exception {
+		String[] obstacleCounts = {"10", "50", "200"};
+		int vertices = 4, warmup = 3, iterations = 5;
+		float density = 0.2f, separation = 0.8f;
+		long seed = 1;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-obstacles")) obstacleCounts = args[++i].split(",");
+			else if (args[i].equals("-vertices")) vertices = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-density")) density = Float.parseFloat(args[++i]);
+			else if (args[i].equals("-separation")) separation = Float.parseFloat(args[++i]);
+			else if (args[i].equals("-seed")) seed = Long.parseLong(args[++i]);
+			else if (args[i].equals("-warmup")) warmup = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-iterations")) iterations = Integer.parseInt(args[++i]);
+			else {
+				System.out.println("Usage: java PlannerBenchmark [-obstacles n,n,...] [-vertices k] [-density d]"
+						+ " [-separation s] [-seed n] [-warmup n] [-iterations n]");
+				System.exit(0);
+			}
+		}
+
+		PlannerBenchmark bench = new PlannerBenchmark(warmup, iterations);
+		for (int i = 0; i < obstacleCounts.length; i++) {
+			int n = Integer.parseInt(obstacleCounts[i].trim());
+			File world = File.createTempFile("bench_world", ".txt");
+			File startGoal = File.createTempFile("bench_start_goal", ".txt");
+			world.deleteOnExit();
+			startGoal.deleteOnExit();
+			new MapGenerator(n, vertices, density, separation, seed).write(world.getPath(), startGoal.getPath());
+			String label = "obstacles=" + n + " vertices=" + vertices + " density=" + density;
+			bench.runAll(world.getPath(), startGoal.getPath(), label);
+		}
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,191 @@
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.concurrent.*;
+
+/**
+ * Plans many routes through one world without the GUI. Each line of the query
+ * input holds a start and goal as "startx starty goalx goaly"; queries are planned
+ * in parallel on a fixed pool of threads and their results are written in input
+ * order, one record per line: the query number, the path length (-1 if there is no
+ * path), the number of points and then the x and y of each point. Optionally each
+ * path is also written as a command file in the format of Environment.writePathToFile.
+ * @author Andrew Goldin
+ */
+public class BatchPlanner {
+
+	// how many queries each thread may have in flight before results are written
+	private static final int QUERIES_PER_WORKER = 64;
+
+	private RoadMap roadMap;
+	private ThreadLocal<RoadMap> workerMaps;
+	private boolean aStar;
+	private int workers;
+	private String outputDir;
+	private PlannerMetrics metrics;
+
+	/**
+	 * Creates a batch planner over an environment's obstacles.
+	 * @param env the environment to plan in
+	 * @param safe if true, plans around obstacles grown by 1.5x the size of the robot
+	 * @param aStar true to search with A*, false to use dijkstra's algorithm
+	 * @param bidirectional true to search from both the start and goal of each query
+	 * @param workers the number of threads planning queries
+	 * @param outputDir the directory to write a command file for each path to, or null for none
+	 * @param metrics the metrics to record the planning stages in, or null for none
+	 */
+	public BatchPlanner(Environment env, boolean safe, boolean aStar, boolean bidirectional, int workers,
+			String outputDir, PlannerMetrics metrics) {
+		env.setMetrics(metrics);
+
+		// obstacles grown already, such as by a GraphCache, are used as they are
+		if (!env.isGrown() || env.isSuperGrown() != safe) env.growObstacles(safe);
+		roadMap = env.getRoadMap(safe ? env.getSuperGrownObstacles() : env.getGrownObstacles());
+		roadMap.setBidirectional(bidirectional);
+		workerMaps = new ThreadLocal<RoadMap>() {
+			protected RoadMap initialValue() {
+				return roadMap.copy();
+			}
+		};
+		this.aStar = aStar;
+		this.workers = Math.max(1, workers);
+		this.outputDir = outputDir;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Answers queries from a distance oracle over the road map, read from a file
+	 * written for the same graph or else computed and written there. The tables
+	 * are kept to half the memory the JVM may use; a graph too large for that is
+	 * left to be searched.
+	 * @param oracleFile the file to read the tables from or write them to
+	 * @return true if queries will use the oracle, false if the graph is too large
+	 * @throws IOException if the file cannot be written
+	 */
+	public boolean useOracle(String oracleFile) throws IOException {
+		DistanceOracle oracle = null;
+		if (new File(oracleFile).isFile()) {
+			try {
+				oracle = DistanceOracle.load(oracleFile, roadMap.getGraph());
+			}
+			catch (IOException e) {
+				// written for another graph or corrupt, so compute and overwrite it
+			}
+		}
+		if (oracle == null) {
+			try {
+				oracle = new DistanceOracle(roadMap.getGraph(), workers, Runtime.getRuntime().maxMemory() / 2);
+			}
+			catch (IllegalArgumentException e) {
+				return false;
+			}
+			oracle.save(oracleFile);
+		}
+		roadMap.setOracle(oracle);
+		return true;
+	}
+
+	/**
+	 * Plans every query read from the input and writes a record for each to the output.
+	 * @param in the source of queries, one per line
+	 * @param out the destination of the result records
+	 * @return the number of queries planned
+	 */
+	public int run(BufferedReader in, PrintStream out) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		ArrayDeque<Future<String>> pending = new ArrayDeque<Future<String>>();
+		int count = 0;
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) continue;
+				String[] s = line.split("\\s+");
+				final int index = count++;
+				final Point start = new Point(Float.parseFloat(s[0]), Float.parseFloat(s[1]));
+				final Point goal = new Point(Float.parseFloat(s[2]), Float.parseFloat(s[3]));
+				pending.add(pool.submit(new Callable<String>() {
+					public String call() {
+						return plan(index, start, goal);
+					}
+				}));
+				// write finished results in order so memory stays bounded on long streams
+				while (pending.size() >= workers * QUERIES_PER_WORKER || (!pending.isEmpty() && pending.peek().isDone())) {
+					out.println(pending.poll().get());
+				}
+			}
+			while (!pending.isEmpty()) {
+				out.println(pending.poll().get());
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		out.flush();
+		return count;
+	}
+
+	// plans a single query on the calling thread's road map and formats its record
+	private String plan(int index, Point start, Point goal) {
+		Point[] path = workerMaps.get().findPath(start, goal, aStar);
+		if (path == null) return index + " -1 0";
+		if (outputDir != null) {
+			Environment.writePathToFile(path, new File(outputDir, "path_" + index + ".txt").getPath());
+		}
+		float length = 0.0f;
+		for (int i = 1; i < path.length; i++) {
+			length += Point.computeDistance(path[i - 1], path[i]);
+		}
+		StringBuilder record = new StringBuilder();
+		record.append(index).append(' ').append(length).append(' ').append(path.length);
+		for (int i = 0; i < path.length; i++) {
+			record.append(' ').append(path[i].x).append(' ').append(path[i].y);
+		}
+		return record.toString();
+	}
+
+	// main method
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("Usage: java BatchPlanner <world file> <query file, or - for standard input>"
+					+ " [-safe] [-astar] [-bidirectional] [-workers n] [-out directory] [-metrics] [-cache directory]"
+					+ " [-oracle file]");
+			System.exit(0);
+		}
+		boolean safe = false, aStar = false, bidirectional = false, showMetrics = false;
+		int workers = Runtime.getRuntime().availableProcessors();
+		String outputDir = null, cacheDir = null, oracleFile = null;
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].equals("-safe")) safe = true;
+			else if (args[i].equals("-astar")) aStar = true;
+			else if (args[i].equals("-bidirectional")) bidirectional = true;
+			else if (args[i].equals("-workers")) workers = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-out")) outputDir = args[++i];
+			else if (args[i].equals("-metrics")) showMetrics = true;
+			else if (args[i].equals("-cache")) cacheDir = args[++i];
+			else if (args[i].equals("-oracle")) oracleFile = args[++i];
+			else {
+				System.out.println("Unknown option " + args[i] + ", exiting");
+				System.exit(0);
+			}
+		}
+		if (outputDir != null) new File(outputDir).mkdirs();
+
+		PlannerMetrics metrics = showMetrics ? new PlannerMetrics() : null;
+		Environment env = Environment.parseWorldFile(args[0]);
+		if (cacheDir != null) {
+			env.setMetrics(metrics);
+			GraphCache.prepare(env, args[0], safe, cacheDir);
+		}
+		BatchPlanner planner = new BatchPlanner(env, safe, aStar, bidirectional, workers, outputDir, metrics);
+		if (oracleFile != null && !planner.useOracle(oracleFile)) {
+			System.err.println("Road map too large for distance tables, searching each query instead");
+		}
+		BufferedReader in = new BufferedReader(args[1].equals("-")
+				? new InputStreamReader(System.in) : new FileReader(args[1]));
+		PrintStream out = new PrintStream(new BufferedOutputStream(System.out), false);
+		planner.run(in, out);
+		in.close();
+		if (metrics != null) System.err.println(metrics);
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,233 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builds convex polygons from raw coordinates, such as clusters of range sensor
+ * returns, using Andrew's monotone chain: the points are sorted by x (then y)
+ * and the lower and upper chains are each built in one pass with a stack.
+ * Points inside the quadrilateral of the four extreme points are dropped
+ * before sorting, since they cannot be on the hull.
+ * Large point sets can be split across threads, each part hulled on its own
+ * and the hull of those hulls taken, which gives the same polygon.
+ * @author Andrew Goldin
+ */
+public class ConvexHull {
+
+	// points hulled by one task when building in parallel
+	private static final int POINTS_PER_TASK = 16384;
+
+	/**
+	 * Returns the convex hull of a set of points.
+	 * @param xs the x coordinates of the points
+	 * @param ys the y coordinates of the points
+	 * @param n the number of points to use from xs and ys
+	 * @return the hull, counter-clockwise in the sense of the cross product from its
+	 * lowest leftmost point, without repeated or collinear points
+	 */
+	public static Poly of(float[] xs, float[] ys, int n) {
+		return of(xs, ys, n, 1);
+	}
+
+	/**
+	 * Returns the convex hull of a set of points, splitting the work across threads.
+	 * @param xs the x coordinates of the points
+	 * @param ys the y coordinates of the points
+	 * @param n the number of points to use from xs and ys
+	 * @param workers the number of threads; 1 builds the hull on the calling thread
+	 * @return the hull, counter-clockwise in the sense of the cross product from its
+	 * lowest leftmost point, without repeated or collinear points
+	 */
+	public static Poly of(float[] xs, float[] ys, int n, int workers) {
+		if (n < 1) throw new IllegalArgumentException("a hull needs at least one point");
+		int[] indices = new int[n];
+		for (int i = 0; i < n; i++) indices[i] = i;
+		int[] vertices;
+		if (workers > 1 && n > POINTS_PER_TASK) {
+			ForkJoinPool pool = new ForkJoinPool(workers);
+			try {
+				vertices = pool.invoke(new HullTask(xs, ys, indices, 0, n));
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+		else {
+			vertices = hullVertices(xs, ys, indices, 0, n);
+		}
+
+		// walk the hull from its lowest leftmost point
+		int[] ring = chain(xs, ys, vertices);
+		int start = 0;
+		for (int i = 1; i < ring.length; i++) {
+			int p = ring[i], q = ring[start];
+			if (ys[p] < ys[q] || (ys[p] == ys[q] && xs[p] < xs[q])) start = i;
+		}
+		float[] hx = new float[ring.length];
+		float[] hy = new float[ring.length];
+		for (int i = 0; i < ring.length; i++) {
+			hx[i] = xs[ring[(start + i) % ring.length]];
+			hy[i] = ys[ring[(start + i) % ring.length]];
+		}
+		return new Poly(hx, hy, ring.length, false);
+	}
+
+	// the hull vertices of the points indices[from, to), sorted by x then y
+	private static int[] hullVertices(float[] xs, float[] ys, int[] indices, int from, int to) {
+		int[] candidates = discardInterior(xs, ys, indices, from, to);
+		return sortedVertices(xs, ys, chain(xs, ys, sortByPosition(xs, ys, candidates, 0, candidates.length)));
+	}
+
+	// walks the hull of points sorted by x then y counter-clockwise from the first,
+	// building the lower chain left to right, then the upper chain right to left,
+	// popping any point that does not turn left
+	private static int[] chain(float[] xs, float[] ys, int[] sorted) {
+		int n = sorted.length;
+		int[] stack = new int[2 * n + 1];
+		int top = 0;
+		for (int i = 0; i < n; i++) {
+			int p = sorted[i];
+			if (top > 0 && xs[stack[top - 1]] == xs[p] && ys[stack[top - 1]] == ys[p]) continue;
+			while (top >= 2 && cross(xs, ys, stack[top - 2], stack[top - 1], p) <= 0.0) top--;
+			stack[top++] = p;
+		}
+		int lower = top + 1;
+		for (int i = n - 2; i >= 0; i--) {
+			int p = sorted[i];
+			if (xs[stack[top - 1]] == xs[p] && ys[stack[top - 1]] == ys[p]) continue;
+			while (top >= lower && cross(xs, ys, stack[top - 2], stack[top - 1], p) <= 0.0) top--;
+			stack[top++] = p;
+		}
+
+		// the upper chain ends back at the first point
+		if (top > 1) top--;
+		return Arrays.copyOf(stack, top);
+	}
+
+	// a ring from chain, which runs up the lower chain and back down the upper one,
+	// rearranged into order by x then y by merging the two chains
+	private static int[] sortedVertices(float[] xs, float[] ys, int[] ring) {
+		int n = ring.length, last = 0;
+		for (int i = 1; i < n; i++) {
+			if (before(xs, ys, ring[last], ring[i])) last = i;
+		}
+		int[] sorted = new int[n];
+		int lo = 0, hi = n - 1, count = 0;
+
+		// ring[0..last] rises and ring[last+1..n-1] falls, so take from whichever end is smaller
+		while (lo <= last && hi > last) {
+			sorted[count++] = before(xs, ys, ring[lo], ring[hi]) ? ring[lo++] : ring[hi--];
+		}
+		while (lo <= last) sorted[count++] = ring[lo++];
+		while (hi > last) sorted[count++] = ring[hi--];
+		return sorted;
+	}
+
+	// merges two lists of points sorted by x then y
+	private static int[] merge(float[] xs, float[] ys, int[] a, int[] b) {
+		int[] merged = new int[a.length + b.length];
+		int i = 0, j = 0, count = 0;
+		while (i < a.length && j < b.length) {
+			merged[count++] = before(xs, ys, b[j], a[i]) ? b[j++] : a[i++];
+		}
+		while (i < a.length) merged[count++] = a[i++];
+		while (j < b.length) merged[count++] = b[j++];
+		return merged;
+	}
+
+	// whether point a comes before point b by x, then y
+	private static boolean before(float[] xs, float[] ys, int a, int b) {
+		return xs[a] < xs[b] || (xs[a] == xs[b] && ys[a] < ys[b]);
+	}
+
+	// drops the points strictly inside the quadrilateral of the leftmost, lowest,
+	// rightmost and highest points, which cannot be on the hull; for a dense cloud
+	// this leaves few points to sort
+	private static int[] discardInterior(float[] xs, float[] ys, int[] indices, int from, int to) {
+		int left = indices[from], bottom = left, right = left, top = left;
+		for (int i = from + 1; i < to; i++) {
+			int p = indices[i];
+			if (xs[p] < xs[left]) left = p;
+			if (xs[p] > xs[right]) right = p;
+			if (ys[p] < ys[bottom]) bottom = p;
+			if (ys[p] > ys[top]) top = p;
+		}
+		int[] kept = new int[to - from];
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			int p = indices[i];
+			if (cross(xs, ys, left, bottom, p) > 0.0 && cross(xs, ys, bottom, right, p) > 0.0
+					&& cross(xs, ys, right, top, p) > 0.0 && cross(xs, ys, top, left, p) > 0.0) continue;
+			kept[count++] = p;
+		}
+		return Arrays.copyOf(kept, count);
+	}
+
+	// orders indices[from, to) by x, then by y among equal x, without boxing
+	private static int[] sortByPosition(float[] xs, float[] ys, int[] indices, int from, int to) {
+		int n = to - from;
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++) keys[i] = ((long) sortable(xs[indices[from + i]]) << 32) | indices[from + i];
+		Arrays.sort(keys);
+		int[] sorted = new int[n];
+		for (int i = 0; i < n; i++) sorted[i] = (int) keys[i];
+
+		// runs of equal x are rare and short, so sort each again by y
+		for (int i = 0; i < n; ) {
+			int j = i + 1;
+			while (j < n && xs[sorted[j]] == xs[sorted[i]]) j++;
+			if (j - i > 1) {
+				for (int k = i; k < j; k++) keys[k] = ((long) sortable(ys[sorted[k]]) << 32) | sorted[k];
+				Arrays.sort(keys, i, j);
+				for (int k = i; k < j; k++) sorted[k] = (int) keys[k];
+			}
+			i = j;
+		}
+		return sorted;
+	}
+
+	// an int with the same order as the float, to use as a sort key
+	private static int sortable(float f) {
+		int bits = Float.floatToIntBits(f + 0.0f);
+		return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+	}
+
+	// positive if a, b, c turn left in the sense of the cross product
+	private static double cross(float[] xs, float[] ys, int a, int b, int c) {
+		return ((double) xs[b] - xs[a]) * ((double) ys[c] - ys[a]) - ((double) ys[b] - ys[a]) * ((double) xs[c] - xs[a]);
+	}
+
+	/**
+	 * Hulls a range of points by hulling its halves in parallel, then hulling the
+	 * vertices of the two part hulls, which is the hull of the whole range. Each part
+	 * returns its vertices already sorted, so combining them needs only merges.
+	 */
+	private static class HullTask extends RecursiveTask<int[]> {
+
+		private static final long serialVersionUID = 1L;
+
+		private float[] xs, ys;
+		private int[] indices;
+		private int from, to;
+
+		HullTask(float[] xs, float[] ys, int[] indices, int from, int to) {
+			this.xs = xs;
+			this.ys = ys;
+			this.indices = indices;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected int[] compute() {
+			if (to - from <= POINTS_PER_TASK) return hullVertices(xs, ys, indices, from, to);
+			int mid = (from + to) >>> 1;
+			HullTask left = new HullTask(xs, ys, indices, from, mid);
+			left.fork();
+			int[] right = new HullTask(xs, ys, indices, mid, to).compute();
+			return sortedVertices(xs, ys, chain(xs, ys, merge(xs, ys, left.join(), right)));
+		}
+
+	}
+
+}
\ No newline at end of file
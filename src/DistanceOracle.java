@@ -0,0 +1,297 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The shortest distance between every pair of vertices of a fixed visibility
+ * graph, with the next hop along each shortest path, so that a query between
+ * two points only has to combine the vertices each can see rather than search.
+ * The tables are filled by a dijkstra search from every vertex, split across
+ * threads, and take six bytes per pair of vertices: a float distance and a
+ * 16-bit next hop. They can be saved to a file and memory-mapped back in place.
+ * @author Andrew Goldin
+ */
+public class DistanceOracle {
+
+	// the largest graph whose saved tables, header included, can be mapped as one
+	// buffer: 6n^2 + HEADER_BYTES may not exceed Integer.MAX_VALUE
+	public static final int MAX_VERTICES = 18918;
+
+	private static final int MAGIC = 0x5250444F;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 24;
+	private static final char NONE = (char) 0xFFFF;
+
+	private VisibilityGraph graph;
+	private int n;
+	private FloatBuffer distances;
+	private CharBuffer nextHops;
+
+	/**
+	 * Returns the memory the tables of a graph would take.
+	 * @param numVertices the number of vertices in the graph
+	 * @return the size of the tables in bytes
+	 */
+	public static long bytesNeeded(int numVertices) {
+		return 6L * numVertices * numVertices;
+	}
+
+	/**
+	 * Computes the tables for a graph.
+	 * @param graph the visibility graph, such as a RoadMap's
+	 * @param workers the number of threads to search with
+	 * @param maxBytes the most memory the tables may take
+	 * @throws IllegalArgumentException if the tables would take more than maxBytes
+	 * or the graph has more than MAX_VERTICES vertices
+	 */
+	public DistanceOracle(VisibilityGraph graph, int workers, long maxBytes) {
+		this.graph = graph;
+		n = graph.numVertices();
+		if (n > MAX_VERTICES || bytesNeeded(n) > maxBytes) {
+			throw new IllegalArgumentException("distance tables for " + n + " vertices need "
+					+ bytesNeeded(n) + " bytes, over the limit of " + maxBytes);
+		}
+		float[] distance = new float[n * n];
+		char[] next = new char[n * n];
+		RowTask task = new RowTask(graph, distance, next, 0, n);
+		if (workers > 1 && n > RowTask.SOURCES_PER_TASK) {
+			ForkJoinPool pool = new ForkJoinPool(workers);
+			try {
+				pool.invoke(task);
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+		else {
+			task.compute();
+		}
+		distances = FloatBuffer.wrap(distance);
+		nextHops = CharBuffer.wrap(next);
+	}
+
+	// wraps tables read from a file
+	private DistanceOracle(VisibilityGraph graph, FloatBuffer distances, CharBuffer nextHops) {
+		this.graph = graph;
+		n = graph.numVertices();
+		this.distances = distances;
+		this.nextHops = nextHops;
+	}
+
+	/**
+	 * Returns the graph the tables were computed for.
+	 * @return the visibility graph
+	 */
+	public VisibilityGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Returns the length of a shortest path between two vertices.
+	 * @param u the id of one vertex
+	 * @param v the id of the other vertex
+	 * @return the distance, or Float.MAX_VALUE if v cannot be reached from u
+	 */
+	public float distance(int u, int v) {
+		return distances.get(v * n + u);
+	}
+
+	/**
+	 * Returns the vertex after u on a shortest path from u to v.
+	 * @param u the id of the vertex to leave
+	 * @param v the id of the vertex to reach
+	 * @return the id of the next vertex, v itself if they are adjacent, or -1 if u is v
+	 * or v cannot be reached from u
+	 */
+	public int nextHop(int u, int v) {
+		char hop = nextHops.get(v * n + u);
+		return hop == NONE ? -1 : hop;
+	}
+
+	/**
+	 * Finds the shortest path between two points that are not in the graph, given
+	 * the vertices each can see, by trying every pair of a vertex seen from the
+	 * start and one seen from the goal.
+	 * @param start the start point
+	 * @param startNeighbors the ids of the vertices visible from the start
+	 * @param startCount the number of entries of startNeighbors to use
+	 * @param goal the goal point
+	 * @param goalNeighbors the ids of the vertices visible from the goal
+	 * @param goalCount the number of entries of goalNeighbors to use
+	 * @param direct whether the start and goal can see each other
+	 * @param reads if not null, reads[0] is increased by the number of table entries read
+	 * @return an ordered list of Points representing the shortest path, or null if there is none
+	 */
+	public Point[] findPath(Point start, int[] startNeighbors, int startCount,
+			Point goal, int[] goalNeighbors, int goalCount, boolean direct, int[] reads) {
+		float best = direct ? Point.computeDistance(start, goal) : Float.MAX_VALUE;
+		int bestA = -1, bestB = -1;
+		float[] toStart = new float[startCount];
+		for (int i = 0; i < startCount; i++) {
+			toStart[i] = Point.computeDistance(start, graph.getVertex(startNeighbors[i]));
+		}
+
+		// the distances to one goal neighbor lie in one row of the table
+		for (int j = 0; j < goalCount; j++) {
+			int b = goalNeighbors[j];
+			float toGoal = Point.computeDistance(graph.getVertex(b), goal);
+			if (toGoal >= best) continue;
+			int row = b * n;
+			if (reads != null) reads[0] += startCount;
+			for (int i = 0; i < startCount; i++) {
+				float d = distances.get(row + startNeighbors[i]);
+				if (d == Float.MAX_VALUE) continue;
+				float total = toStart[i] + d + toGoal;
+				if (total < best) {
+					best = total;
+					bestA = startNeighbors[i];
+					bestB = b;
+				}
+			}
+		}
+		if (bestA < 0) return direct ? new Point[] {start, goal} : null;
+
+		int length = 3;
+		for (int v = bestA; v != bestB; v = nextHop(v, bestB)) length++;
+		if (reads != null) reads[0] += 2 * (length - 3);
+		Point[] path = new Point[length];
+		path[0] = start;
+		int k = 1;
+		for (int v = bestA; v != bestB; v = nextHop(v, bestB)) path[k++] = graph.getVertex(v);
+		path[k++] = graph.getVertex(bestB);
+		path[k] = goal;
+		return path;
+	}
+
+	/**
+	 * Writes the tables to a file, for load to map back in later.
+	 * @param file the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(String file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(n);
+			out.writeInt(0);
+			out.writeLong(fingerprint(graph));
+			for (int k = 0; k < n * n; k++) out.writeFloat(distances.get(k));
+			for (int k = 0; k < n * n; k++) out.writeChar(nextHops.get(k));
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Maps tables written by save back in, reading them from the file as needed
+	 * rather than copying them onto the heap.
+	 * @param file the file to read
+	 * @param graph the graph the tables were computed for
+	 * @return the oracle over the graph
+	 * @throws IOException if the file cannot be read, is corrupt, or was written for another graph
+	 */
+	public static DistanceOracle load(String file, VisibilityGraph graph) throws IOException {
+		int n = graph.numVertices();
+		long size = new File(file).length();
+		if (n > MAX_VERTICES || size > Integer.MAX_VALUE) throw new IOException(file + " is too large to map");
+		ByteBuffer buffer = WorldFile.map(file);
+		if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException(file + " is not a distance table file");
+		}
+		if (buffer.getInt(8) != n || buffer.getLong(16) != fingerprint(graph)) {
+			throw new IOException(file + " was written for another graph");
+		}
+		if (buffer.limit() != HEADER_BYTES + bytesNeeded(n)) throw new IOException(file + " is truncated");
+		buffer.position(HEADER_BYTES);
+		FloatBuffer distances = buffer.asFloatBuffer();
+		distances.limit(n * n);
+		buffer.position((int) (HEADER_BYTES + 4L * n * n));
+		CharBuffer nextHops = buffer.asCharBuffer();
+		return new DistanceOracle(graph, distances, nextHops);
+	}
+
+	// a hash of a graph's vertices and edges, to tell whether tables belong to it
+	private static long fingerprint(VisibilityGraph graph) {
+		long h = graph.numVertices();
+		for (int v = 0; v < graph.numVertices(); v++) {
+			h = h * 31 + Float.floatToIntBits(graph.getVertex(v).x);
+			h = h * 31 + Float.floatToIntBits(graph.getVertex(v).y);
+		}
+		int[] offsets = graph.getOffsets(), targets = graph.getTargets();
+		for (int k = 0; k < offsets.length; k++) h = h * 31 + offsets[k];
+		for (int k = 0; k < targets.length; k++) h = h * 31 + targets[k];
+		return h;
+	}
+
+	/**
+	 * Fills the table rows of a range of source vertices, splitting the range in
+	 * half until it is small enough to search from each source directly.
+	 */
+	private static class RowTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private static final int SOURCES_PER_TASK = 16;
+
+		private VisibilityGraph graph;
+		private float[] distance;
+		private char[] next;
+		private int lo, hi;
+
+		RowTask(VisibilityGraph graph, float[] distance, char[] next, int lo, int hi) {
+			this.graph = graph;
+			this.distance = distance;
+			this.next = next;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo > SOURCES_PER_TASK) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new RowTask(graph, distance, next, lo, mid), new RowTask(graph, distance, next, mid, hi));
+				return;
+			}
+			int n = graph.numVertices();
+			int[] offsets = graph.getOffsets(), targets = graph.getTargets();
+			float[] weights = graph.getWeights();
+			IndexedMinHeap queue = new IndexedMinHeap(n);
+			boolean[] visited = new boolean[n];
+
+			// row s holds the distance from s to every vertex, and each vertex's
+			// predecessor on the way from s, i.e. its next hop back toward s
+			for (int s = lo; s < hi; s++) {
+				int row = s * n;
+				Arrays.fill(distance, row, row + n, Float.MAX_VALUE);
+				Arrays.fill(next, row, row + n, NONE);
+				Arrays.fill(visited, false);
+				queue.clear();
+				distance[row + s] = 0.0f;
+				queue.insertOrDecrease(s, 0.0f);
+				while (!queue.isEmpty()) {
+					int u = queue.poll();
+					visited[u] = true;
+					float du = distance[row + u];
+					for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+						int v = targets[k];
+						float alt = du + weights[k];
+						if (!visited[v] && alt < distance[row + v]) {
+							distance[row + v] = alt;
+							next[row + v] = (char) u;
+							queue.insertOrDecrease(v, alt);
+						}
+					}
+				}
+			}
+		}
+
+	}
+
+}
\ No newline at end of file
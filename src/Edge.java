@@ -1,28 +1,22 @@
-import java.awt.Graphics;
-import java.awt.Graphics2D;
-import java.awt.geom.Line2D;
-
 /**
  * Represents an edge, or a line segment defined by two points.
  * @author Andrew Goldin
  */
 public class Edge {
 	
-	private final float EPSILON = 0.001f;
+	public static final float EPSILON = 0.001f;
 	
-	public Point p, q;
-	private Point pScaled, qScaled;
-	private boolean valid;
+	public final Point p, q;
 	
 	/**
-	 * Creates a new edge with two points.
+	 * Creates a new edge with two points. Points cannot be moved, so the edge
+	 * shares them rather than copying.
 	 * @param a the first point
 	 * @param b the second point
 	 */
 	public Edge(Point a, Point b) {
-		p = new Point(a);
-		q = new Point(b);
-		valid = true;
+		p = a;
+		q = b;
 	}
 	
 	/**
@@ -39,10 +33,17 @@ public class Edge {
 	 * @return true if the edges intersect, false otherwise
 	 */
 	public boolean intersects(Edge other) {
-		Point p1 = this.p, p2 = this.q;
-		Point p3 = other.p, p4 = other.q;
-		boolean otherCrossesThis = dir(p1, p2, p3) * dir(p1, p2, p4) < 0.0f;
-		boolean thisCrossesOther = dir(p3, p4, p1) * dir(p3, p4, p2) < 0.0f;
+		return crosses(p.x, p.y, q.x, q.y, other.p.x, other.p.y, other.q.x, other.q.y);
+	}
+	
+	/**
+	 * Determines whether the segment from (x1, y1) to (x2, y2) properly crosses
+	 * the segment from (x3, y3) to (x4, y4), i.e. each separates the other's endpoints.
+	 * @return true if the segments cross, false otherwise
+	 */
+	public static boolean crosses(float x1, float y1, float x2, float y2, float x3, float y3, float x4, float y4) {
+		boolean otherCrossesThis = dir(x1, y1, x2, y2, x3, y3) * dir(x1, y1, x2, y2, x4, y4) < 0.0f;
+		boolean thisCrossesOther = dir(x3, y3, x4, y4, x1, y1) * dir(x3, y3, x4, y4, x2, y2) < 0.0f;
 		return otherCrossesThis && thisCrossesOther;
 	}
 	
@@ -52,55 +53,34 @@ public class Edge {
 	 * @return true if the edge contains the given point, false otherwise
 	 */
 	public boolean containsPoint(Point c) {
-		if (c.equals(p) || c.equals(q)) return false;
-		float cross = (c.y - p.y) * (q.x - p.x) - (c.x - p.x) * (q.y - p.y);
+		return containsPoint(p.x, p.y, q.x, q.y, c.x, c.y);
+	}
+	
+	/**
+	 * Determines if the point (cx, cy) lies somewhere on the segment from (px, py)
+	 * to (qx, qy), other than at its endpoints.
+	 * @return true if the segment contains the point, false otherwise
+	 */
+	public static boolean containsPoint(float px, float py, float qx, float qy, float cx, float cy) {
+		if ((cx == px && cy == py) || (cx == qx && cy == qy)) return false;
+		float cross = (cy - py) * (qx - px) - (cx - px) * (qy - py);
 		if (Math.abs(cross) > EPSILON) return false;
-		float dot = (c.x - p.x) * (q.x - p.x) + (c.y - p.y) * (q.y - p.y);
+		float dot = (cx - px) * (qx - px) + (cy - py) * (qy - py);
 		if (dot < 0.0f) return false;
-		float sqlenqp = (q.x - p.x) * (q.x - p.x) + (q.y - p.y) * (q.y - p.y);
+		float sqlenqp = (qx - px) * (qx - px) + (qy - py) * (qy - py);
 		if (dot > sqlenqp) return false;
 		return true;
 	}
 	
 	// right if less than 0, left if greater
-	private float dir(Point p1, Point p2, Point p3) {
-		float ux = -(p2.x - p1.x);
-		float uy = p2.y - p1.y;
-		float vx = -(p3.x - p1.x);
-		float vy = p3.y - p1.y;
+	private static float dir(float x1, float y1, float x2, float y2, float x3, float y3) {
+		float ux = -(x2 - x1);
+		float uy = y2 - y1;
+		float vx = -(x3 - x1);
+		float vy = y3 - y1;
 		return ux * vy - uy * vx;
 	}
 	
-	/**
-	 * Draws the edge on the screen.
-	 * @param g the graphics context
-	 * @param scale the scale factor
-	 * @param offsetX pixel offset on x axis
-	 * @param offsetY pixel offset on y axis
-	 */
-	public void draw(Graphics g, float scale, float offsetX, float offsetY) {
-		Graphics2D g2 = (Graphics2D) g;
-		pScaled = new Point((p.x - offsetX) * scale + RoboPath.PIXEL_OFFSET_X, (p.y - offsetY) * scale + RoboPath.PIXEL_OFFSET_Y);
-		qScaled = new Point((q.x - offsetX) * scale + RoboPath.PIXEL_OFFSET_X, (q.y - offsetY) * scale + RoboPath.PIXEL_OFFSET_Y);
-		g2.draw(new Line2D.Float(pScaled, qScaled));
-	}
-	
-	/**
-	 * Sets the validity of the edge for vgraph purposes.
-	 * @param b true to set the edge to valid, false to invalidate
-	 */
-	public void setValid(boolean b) {
-		valid = b;
-	}
-	
-	/**
-	 * Returns the validity of the edge, for vgraph purposes.
-	 * @return true if edge is valid, false otherwise
-	 */
-	public boolean isValid() {
-		return valid;
-	}
-	
 	/**
 	 * Determines if this edge is equal to another.
 	 * @param other the other Edge
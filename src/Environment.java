@@ -1,6 +1,8 @@
-import java.awt.*;
 import java.util.*;
 import java.io.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Represents an environment for the robot, containing the boundary, obstacles, start and goal points.
@@ -8,12 +10,30 @@ import java.io.*;
  */
 public class Environment {
 	
+	// pairs tested between progress reports and cancellation checks, a power of two
+	private static final int PROGRESS_INTERVAL = 64;
+	
+	// the most vertex pairs whose blockers are kept between clearances, 128 MB of them
+	private static final long MAX_BLOCKER_PAIRS = 1L << 25;
+	
+	// distance bands findNearPairs groups vertices into, each twice as far as the last,
+	// and the slack, relative and in radians, it allows for rounding
+	private static final int BANDS = 32;
+	private static final double NEAR_SLACK = 1e-4;
+	
 	private Poly boundary, startShape, goalShape;
 	private Poly[] obstacles, grownObstacles, superGrownObstacles;
 	private Point startPoint, goalPoint;
 	private Point[] shortestPath;
 	private Edge[] visibilityGraph;
-	private float minX, minY;
+	private VisibilityGraph graph;
+	private ObstacleGrid grid;
+	private Poly[] gridObstacles, graphObstacles, roadMapObstacles;
+	private RoadMap roadMap;
+	private PlannerMetrics metrics;
+	private PlannerProgress progress;
+	private int startId, goalId;
+	private int nodesExpanded, workers = 1;
 	private boolean grown, superGrown, graphComputed, pathComputed;
 	
 	/**
@@ -39,9 +59,6 @@ public class Environment {
 		float[] goalPtsY = {goalPoint.y - robotRadius, goalPoint.y + robotRadius, goalPoint.y + robotRadius, goalPoint.y - robotRadius};
 		goalShape = new Poly(goalPtsX, goalPtsY, goalPtsX.length, true);
 		
-		minX = boundary.getMinX();
-		minY = boundary.getMinY();
-		
 		grown = false;
 		graphComputed = false;
 		pathComputed = false;
@@ -50,23 +67,590 @@ public class Environment {
 	/**
 	 * Grows all obstacles by the size of the iRobot Create, for pathfinding purposes.
 	 * @param safe if true, grows the obstacles by 1.5x the size of the robot for determining a safer paths
+	 * @throws java.util.concurrent.CancellationException if the attached progress is cancelled
 	 */
 	public void growObstacles(boolean safe) {
-		grownObstacles = new Poly[obstacles.length];
-		superGrownObstacles = new Poly[obstacles.length];
+		long startNanos = System.nanoTime();
+		Object event = PlannerMetrics.beginStage();
+		PlannerProgress.begin(progress, "Grow", obstacles.length);
+		Poly[] grownSet = new Poly[obstacles.length];
+		Poly[] superGrownSet = new Poly[obstacles.length];
+		Poly superShape = getSafeShape();
+		for (int i = 0; i < obstacles.length; i++) {
+			grownSet[i] = obstacles[i].grow(startShape);
+			if (safe) superGrownSet[i] = grownSet[i].grow(superShape);
+			PlannerProgress.advance(progress, 1);
+		}
+		grownObstacles = grownSet;
+		superGrownObstacles = superGrownSet;
+		grown = true;
+		if (safe) superGrown = true;
+		else superGrown = false;
+		PlannerMetrics.endStage(metrics, event, PlannerMetrics.GROW, startNanos, 0, 0, 0, 0, 0);
+	}
+	
+	/**
+	 * Returns the shape that safe growth adds to the already grown obstacles,
+	 * a further half robot.
+	 * @return the safe growth shape, built anew on each call
+	 */
+	public Poly getSafeShape() {
 		Point[] startPoints = startShape.getPoints().clone();
 		float[] sx = new float[startPoints.length];
 		for (int i = 0; i < sx.length; i++) sx[i] = startPoints[i].x / 2.0f;
 		float[] sy = new float[startPoints.length];
 		for (int i = 0; i < sy.length; i++) sy[i] = startPoints[i].y / 2.0f;
-		Poly superShape = new Poly(sx, sy, sx.length, true);
+		return new Poly(sx, sy, sx.length, true);
+	}
+	
+	/**
+	 * Grows the obstacles by several clearances at once, splitting the work across
+	 * the worker threads by obstacle and clearance. A clearance is the distance kept
+	 * from the obstacles along each axis, so growObstacles(false) corresponds to half
+	 * the robot's diameter; each set is grown straight from the original obstacles.
+	 * The environment's own grown obstacles are left as they are.
+	 * @param clearances the clearance of each set, each greater than zero
+	 * @return the obstacles grown by each clearance, in the order of clearances
+	 * @throws java.util.concurrent.CancellationException if the attached progress is cancelled
+	 */
+	public Poly[][] growObstacles(float[] clearances) {
+		long startNanos = System.nanoTime();
+		Object event = PlannerMetrics.beginStage();
+		Poly[] footprints = new Poly[clearances.length];
+		for (int k = 0; k < clearances.length; k++) {
+			float c = clearances[k];
+			if (!(c > 0.0f)) throw new IllegalArgumentException("clearance must be positive: " + c);
+			footprints[k] = new Poly(new float[] {-c, -c, c, c}, new float[] {-c, c, c, -c}, 4, false);
+		}
+		Poly[][] grownSets = new Poly[clearances.length][obstacles.length];
+		int total = clearances.length * obstacles.length;
+		PlannerProgress.begin(progress, "Grow", total);
+		if (workers > 1 && total > 1) {
+			ForkJoinPool pool = new ForkJoinPool(workers);
+			try {
+				pool.invoke(new GrowTask(obstacles, footprints, grownSets, 0, total, progress));
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+		else {
+			new GrowTask(obstacles, footprints, grownSets, 0, total, progress).compute();
+		}
+		PlannerMetrics.endStage(metrics, event, PlannerMetrics.GROW, startNanos, 0, 0, 0, 0, 0);
+		return grownSets;
+	}
+	
+	/**
+	 * Computes a visibility graph, with the start and goal, for each of several sets
+	 * of obstacles grown from the obstacles by different clearances, giving for each
+	 * the same graph as computeVisibilityGraph. A larger clearance grows every
+	 * obstacle over the same vertices pushed outward, so a pair of vertices that an
+	 * obstacle blocks at one clearance is usually blocked by the same obstacle at the
+	 * next. Given the sets in order of increasing clearance, each pair first retests
+	 * the obstacle that blocked it in the previous set and only searches the grid if
+	 * that obstacle no longer does. The environment's own graph is left as it is.
+	 * @param grownSets obstacle sets from growObstacles(float[]), best in order of increasing clearance
+	 * @return the graph of each set, with the start as vertex 0 and the goal as the vertex at the goal point
+	 * @throws java.util.concurrent.CancellationException if the attached progress is cancelled
+	 */
+	public VisibilityGraph[] computeVisibilityGraphs(Poly[][] grownSets) {
+		VisibilityGraph[] graphs = new VisibilityGraph[grownSets.length];
+		int[][] blockerRows = null;
+		int[] lastCounts = null;
+		long totalPairs = 0;
+		for (int k = 0; k < grownSets.length; k++) {
+			long numPoints = 2;
+			for (int i = 0; i < grownSets[k].length; i++) numPoints += grownSets[k][i].numPoints();
+			totalPairs += numPoints * (numPoints - 1) / 2;
+		}
+		PlannerProgress.begin(progress, "Visibility", totalPairs);
+		for (int k = 0; k < grownSets.length; k++) {
+			long startNanos = System.nanoTime();
+			Object event = PlannerMetrics.beginStage();
+			LongAdder pairs = null, tests = null;
+			if (PlannerMetrics.isCounting(metrics, event)) {
+				pairs = new LongAdder();
+				tests = new LongAdder();
+			}
+			Poly[] set = grownSets[k];
+			VisibilityGraph.Builder builder = new VisibilityGraph.Builder();
+			ArrayList<Point> allPoints = new ArrayList<Point>();
+			allPoints.add(startPoint);
+			allPoints.add(goalPoint);
+			int[] counts = new int[set.length];
+			for (int i = 0; i < set.length; i++) {
+				allPoints.addAll(Arrays.asList(set[i].getPoints()));
+				counts[i] = set[i].numPoints();
+			}
+			Point[] points = allPoints.toArray(new Point[allPoints.size()]);
+			int[] ids = new int[points.length];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = builder.addVertex(points[i]);
+			}
+			
+			// blockers carry over only while the vertices of each obstacle match up
+			if (!Arrays.equals(counts, lastCounts)) {
+				blockerRows = null;
+				if ((long) points.length * (points.length - 1) / 2 <= MAX_BLOCKER_PAIRS) {
+					blockerRows = new int[points.length][];
+					for (int i = 0; i < points.length; i++) {
+						blockerRows[i] = new int[points.length - 1 - i];
+						Arrays.fill(blockerRows[i], -1);
+					}
+				}
+			}
+			lastCounts = counts;
+			
+			ObstacleGrid setGrid = new ObstacleGrid(boundary, set);
+			int[][] visibleRows = new int[points.length][];
+			if (workers > 1) {
+				ForkJoinPool pool = new ForkJoinPool(workers);
+				try {
+					pool.invoke(new VisibilityRowTask(points, ids, setGrid, visibleRows, blockerRows,
+							0, points.length, pairs, tests, progress));
+				}
+				finally {
+					pool.shutdown();
+				}
+			}
+			else {
+				for (int i = 0; i < points.length; i++) {
+					visibleRows[i] = computeVisibleRow(points, ids, setGrid, i, pairs, tests, progress,
+							blockerRows == null ? null : blockerRows[i]);
+				}
+			}
+			int numEdges = 0;
+			for (int i = 0; i < points.length; i++) {
+				for (int n = 0; n < visibleRows[i].length; n++) {
+					builder.addEdge(ids[i], ids[visibleRows[i][n]]);
+				}
+				numEdges += visibleRows[i].length;
+			}
+			PlannerMetrics.endStage(metrics, event, PlannerMetrics.VISIBILITY, startNanos,
+					pairs == null ? 0 : pairs.sum(), tests == null ? 0 : tests.sum(), numEdges, 0, 0);
+			startNanos = System.nanoTime();
+			event = PlannerMetrics.beginStage();
+			graphs[k] = builder.build();
+			PlannerMetrics.endStage(metrics, event, PlannerMetrics.GRAPH_BUILD, startNanos, 0, 0, 0, 0, 0);
+		}
+		return graphs;
+	}
+	
+	/**
+	 * Finds the shortest path from start to goal at each of several clearances from
+	 * the obstacles, sharing work between them as growObstacles(float[]) and
+	 * computeVisibilityGraphs do. Comparing the paths shows, for instance, the widest
+	 * robot that can reach the goal or the length each extra margin of safety costs.
+	 * The environment's own grown obstacles, graph and path are left as they are.
+	 * @param clearances the clearance of each path, each greater than zero
+	 * @param aStar true to search with A*, false to use dijkstra's algorithm
+	 * @return the path at each clearance, in the order of clearances, or null where there is none
+	 * @throws java.util.concurrent.CancellationException if the attached progress is cancelled
+	 */
+	public Point[][] computeShortestPaths(final float[] clearances, boolean aStar) {
+		Integer[] order = new Integer[clearances.length];
+		for (int k = 0; k < order.length; k++) order[k] = k;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Float.compare(clearances[a], clearances[b]);
+			}
+		});
+		float[] sorted = new float[clearances.length];
+		for (int k = 0; k < order.length; k++) sorted[k] = clearances[order[k]];
+		VisibilityGraph[] graphs = computeVisibilityGraphs(growObstacles(sorted));
+		
+		Point[][] paths = new Point[clearances.length][];
+		for (int k = 0; k < graphs.length; k++) {
+			PathFinder pf = new PathFinder(graphs[k], 0, graphs[k].indexOf(goalPoint));
+			pf.setMetrics(metrics);
+			pf.setProgress(progress);
+			paths[order[k]] = pf.getShortestPath(aStar);
+		}
+		return paths;
+	}
+	
+	/**
+	 * Adds an obstacle to the environment, growing it to match the other obstacles
+	 * and updating the visibility graph, if one has been computed, without rebuilding it.
+	 * @param obstacle the obstacle to add
+	 * @return the index of the new obstacle
+	 */
+	public int addObstacle(Poly obstacle) {
+		int index = obstacles.length;
+		replaceObstacle(index, obstacle);
+		return index;
+	}
+	
+	/**
+	 * Removes an obstacle from the environment, updating the visibility graph, if
+	 * one has been computed, without rebuilding it. Later obstacles shift down one index.
+	 * @param index the index of the obstacle to remove
+	 */
+	public void removeObstacle(int index) {
+		replaceObstacle(index, null);
+	}
+	
+	/**
+	 * Moves an obstacle, updating the visibility graph, if one has been computed,
+	 * without rebuilding it.
+	 * @param index the index of the obstacle to move
+	 * @param dx the distance to move along the x axis
+	 * @param dy the distance to move along the y axis
+	 */
+	public void translateObstacle(int index, float dx, float dy) {
+		replaceObstacle(index, obstacles[index].translate(dx, dy));
+	}
+	
+	/**
+	 * Returns the number of obstacles in the environment.
+	 * @return the number of obstacles
+	 */
+	public int numObstacles() {
+		return obstacles.length;
+	}
+	
+	// puts an obstacle at index (appending if index is the obstacle count, removing
+	// if the obstacle is null), growing only that obstacle and patching the graph
+	private void replaceObstacle(int index, Poly obstacle) {
+		Poly[] oldSet = graphComputed ? graphObstacles : null;
+		boolean remove = obstacle == null;
+		Poly[] newObstacles = replace(obstacles, index, obstacle, remove);
+		if (grown) {
+			Poly grownShape = remove ? null : obstacle.grow(startShape);
+			Poly superShape = superGrown && !remove ? grownShape.grow(getSafeShape()) : null;
+			Poly removedShape = oldSet != null && index < oldSet.length ? oldSet[index] : null;
+			Poly[] grownSet = replace(grownObstacles, index, grownShape, remove);
+			Poly[] superGrownSet = replace(superGrownObstacles, index, superShape, remove);
+			if (oldSet == grownObstacles) updateVisibilityGraph(grownSet, index, remove, removedShape, grownShape);
+			else if (oldSet == superGrownObstacles) updateVisibilityGraph(superGrownSet, index, remove, removedShape, superShape);
+			else graphComputed = false;
+			grownObstacles = grownSet;
+			superGrownObstacles = superGrownSet;
+		}
+		else graphComputed = false;
+		obstacles = newObstacles;
+		roadMap = null;
+		pathComputed = false;
+	}
+	
+	// copies an obstacle array with one entry replaced, appended or removed
+	private static Poly[] replace(Poly[] polys, int index, Poly poly, boolean remove) {
+		if (remove) {
+			Poly[] result = new Poly[polys.length - 1];
+			System.arraycopy(polys, 0, result, 0, index);
+			System.arraycopy(polys, index + 1, result, index, polys.length - index - 1);
+			return result;
+		}
+		Poly[] result = Arrays.copyOf(polys, Math.max(polys.length, index + 1));
+		result[index] = poly;
+		return result;
+	}
+	
+	/**
+	 * Brings the visibility graph up to date after one obstacle changes, giving the
+	 * same graph as recomputing it over the new obstacles. Whether an edge is visible
+	 * depends on each obstacle independently, so only three kinds of pair need a test:
+	 * edges that the added shape may block, pairs that the removed shape may have
+	 * blocked, and pairs with a new vertex. The first two are found around each
+	 * shape by findNearPairs, the grid is updated for the one obstacle, and the
+	 * graph's rows are copied with their edges renumbered, dropped or added.
+	 */
+	private void updateVisibilityGraph(Poly[] obstacles, int index, boolean removed, Poly removedShape, Poly addedShape) {
+		long startNanos = System.nanoTime();
+		Object event = PlannerMetrics.beginStage();
+		int[] tests = PlannerMetrics.isCounting(metrics, event) ? new int[1] : null;
+		long pairs = 0;
+		VisibilityGraph oldGraph = graph;
+		ObstacleGrid newGrid = grid != null && gridObstacles == graphObstacles
+				? grid.update(obstacles, index, removed) : new ObstacleGrid(boundary, obstacles);
+		
+		// vertices in the same order as a full computation, so ids match it
+		int total = 2;
+		for (int i = 0; i < obstacles.length; i++) total += obstacles[i].numPoints();
+		HashMap<Point, Integer> ids = new HashMap<Point, Integer>();
+		Point[] points = new Point[total];
+		ArrayList<Point> allPoints = new ArrayList<Point>(total);
+		allPoints.add(startPoint);
+		allPoints.add(goalPoint);
 		for (int i = 0; i < obstacles.length; i++) {
-			grownObstacles[i] = obstacles[i].grow(startShape);
-			if (safe) superGrownObstacles[i] = grownObstacles[i].grow(superShape);
+			allPoints.addAll(Arrays.asList(obstacles[i].getPoints()));
 		}
-		grown = true;
-		if (safe) superGrown = true;
-		else superGrown = false;
+		int n = 0;
+		for (Point p : allPoints) {
+			if (ids.containsKey(p)) continue;
+			ids.put(p, n);
+			points[n++] = p;
+		}
+		points = Arrays.copyOf(points, n);
+		
+		// vertices that were also in the old graph keep their old edges
+		int[] oldId = new int[n];
+		Arrays.fill(oldId, -1);
+		int[] newId = new int[oldGraph.numVertices()];
+		boolean ordered = true;
+		for (int v = 0, last = -1; v < newId.length; v++) {
+			Integer id = ids.get(oldGraph.getVertex(v));
+			newId[v] = id == null ? -1 : id;
+			if (id == null) continue;
+			oldId[id] = v;
+			if (id < last) ordered = false;
+			last = id;
+		}
+		int numNew = 0;
+		for (int a = 0; a < n; a++) {
+			if (oldId[a] < 0) numNew++;
+		}
+		
+		int[] offsets = oldGraph.getOffsets(), targets = oldGraph.getTargets();
+		boolean[] dropped = new boolean[targets.length];
+		int[] addedPairs = new int[16];
+		int numAdded = 0;
+		PlannerProgress.begin(progress, "Visibility", (addedShape != null ? n : 0) + (removedShape != null ? n : 0) + numNew);
+		
+		// old edges the added shape now blocks
+		if (addedShape != null) {
+			int[] near = findNearPairs(points, addedShape, progress);
+			for (int k = 0; k < near.length; k += 2) {
+				int a = oldId[near[k]], b = oldId[near[k + 1]];
+				if (a < 0 || b < 0) continue;
+				int ab = Arrays.binarySearch(targets, offsets[a], offsets[a + 1], b);
+				if (ab < 0 || !blocks(addedShape, points[near[k]], points[near[k + 1]])) continue;
+				dropped[ab] = true;
+				dropped[Arrays.binarySearch(targets, offsets[b], offsets[b + 1], a)] = true;
+			}
+		}
+		
+		// old pairs the removed shape blocked, which may now be visible
+		if (removedShape != null) {
+			int[] near = findNearPairs(points, removedShape, progress);
+			for (int k = 0; k < near.length; k += 2) {
+				int a = oldId[near[k]], b = oldId[near[k + 1]];
+				if (a < 0 || b < 0 || Arrays.binarySearch(targets, offsets[a], offsets[a + 1], b) >= 0) continue;
+				Point p = points[near[k]], q = points[near[k + 1]];
+				if (!blocks(removedShape, p, q)) continue;
+				pairs++;
+				if (newGrid.isVisible(p.x, p.y, q.x, q.y, tests)) {
+					if (2 * numAdded + 2 > addedPairs.length) addedPairs = Arrays.copyOf(addedPairs, 2 * addedPairs.length);
+					addedPairs[2 * numAdded] = near[k];
+					addedPairs[2 * numAdded++ + 1] = near[k + 1];
+				}
+			}
+		}
+		
+		// every pair with a new vertex, each once
+		for (int a = 0; a < n; a++) {
+			if (oldId[a] >= 0) continue;
+			PlannerProgress.advance(progress, 1);
+			for (int b = 0; b < n; b++) {
+				if (b == a || (oldId[b] < 0 && b > a)) continue;
+				pairs++;
+				if (newGrid.isVisible(points[a].x, points[a].y, points[b].x, points[b].y, tests)) {
+					if (2 * numAdded + 2 > addedPairs.length) addedPairs = Arrays.copyOf(addedPairs, 2 * addedPairs.length);
+					addedPairs[2 * numAdded] = a;
+					addedPairs[2 * numAdded++ + 1] = b;
+				}
+			}
+		}
+		
+		// each row keeps its surviving old edges, renumbered, and gains its added ones;
+		// rows stay sorted unless edges were added to them or vertices changed order
+		float[] weights = oldGraph.getWeights();
+		int[] newOffsets = new int[n + 1];
+		int[] gained = new int[n];
+		for (int k = 0; k < 2 * numAdded; k++) gained[addedPairs[k]]++;
+		for (int v = 0; v < n; v++) {
+			int degree = gained[v];
+			if (oldId[v] >= 0) {
+				for (int k = offsets[oldId[v]]; k < offsets[oldId[v] + 1]; k++) {
+					if (!dropped[k] && newId[targets[k]] >= 0) degree++;
+				}
+			}
+			newOffsets[v + 1] = newOffsets[v] + degree;
+		}
+		PlannerMetrics.endStage(metrics, event, PlannerMetrics.VISIBILITY, startNanos,
+				pairs, tests == null ? 0 : tests[0], newOffsets[n] / 2, 0, 0);
+		startNanos = System.nanoTime();
+		event = PlannerMetrics.beginStage();
+		int[] newTargets = new int[newOffsets[n]];
+		float[] newWeights = new float[newOffsets[n]];
+		int[] fill = new int[n];
+		for (int v = 0; v < n; v++) {
+			fill[v] = newOffsets[v];
+			if (oldId[v] < 0) continue;
+			for (int k = offsets[oldId[v]]; k < offsets[oldId[v] + 1]; k++) {
+				if (dropped[k] || newId[targets[k]] < 0) continue;
+				newTargets[fill[v]] = newId[targets[k]];
+				newWeights[fill[v]++] = weights[k];
+			}
+		}
+		for (int k = 0; k < numAdded; k++) {
+			int a = addedPairs[2 * k], b = addedPairs[2 * k + 1];
+			newTargets[fill[a]++] = b;
+			newTargets[fill[b]++] = a;
+		}
+		for (int v = 0; v < n; v++) {
+			if (ordered && gained[v] == 0) continue;
+			Arrays.sort(newTargets, newOffsets[v], newOffsets[v + 1]);
+			for (int k = newOffsets[v]; k < newOffsets[v + 1]; k++) {
+				newWeights[k] = Point.computeDistance(points[v], points[newTargets[k]]);
+			}
+		}
+		graph = VisibilityGraph.fromArrays(points, newOffsets, newTargets, newWeights);
+		PlannerMetrics.endStage(metrics, event, PlannerMetrics.GRAPH_BUILD, startNanos, 0, 0, 0, 0, 0);
+		visibilityGraph = null;
+		grid = newGrid;
+		gridObstacles = obstacles;
+		startId = ids.get(startPoint);
+		goalId = ids.get(goalPoint);
+		graphObstacles = obstacles;
+		graphComputed = true;
+	}
+	
+	// pairs of vertices, as (a, b) with a < b, whose segment a shape may block as
+	// blocks tests it: every pair passing within the tolerance of Poly.intersects of
+	// the shape's bounding circle, and every pair short enough for that tolerance to
+	// reach farther than the circle's margin. A segment passing within distance r of
+	// the center c, with neither end that close, has ends whose angles around c are
+	// at least pi - asin(r / |ac|) - asin(r / |bc|) apart, so each vertex only looks
+	// at the vertices in a window opposite it, grouped by distance so the window fits
+	private static int[] findNearPairs(Point[] points, Poly shape, PlannerProgress progress) {
+		int n = points.length;
+		
+		// Edge.containsPoint accepts vertices up to EPSILON / length off a segment, so
+		// segments at least shortLength long are blocked only within shortLength / 2
+		double shortLength = Math.sqrt(2.0 * Edge.EPSILON);
+		double cx = (shape.getMinX() + shape.getMaxX()) / 2.0, cy = (shape.getMinY() + shape.getMaxY()) / 2.0;
+		double radius = 0.0;
+		float[] xs = shape.getXPoints(), ys = shape.getYPoints();
+		for (int i = 0; i < xs.length; i++) radius = Math.max(radius, Math.hypot(xs[i] - cx, ys[i] - cy));
+		radius = (radius + shortLength) * (1.0 + NEAR_SLACK);
+		
+		double[] angle = new double[n], alpha = new double[n];
+		int[] band = new int[n];
+		int[] bandSize = new int[BANDS];
+		for (int v = 0; v < n; v++) {
+			double d = Math.hypot(points[v].x - cx, points[v].y - cy);
+			if (d <= radius) {
+				band[v] = -1;
+				continue;
+			}
+			angle[v] = Math.atan2(points[v].y - cy, points[v].x - cx);
+			alpha[v] = Math.asin(radius / d);
+			band[v] = Math.min(BANDS - 1, (int) (Math.log(d / radius) / Math.log(2.0)));
+			bandSize[band[v]]++;
+		}
+		
+		// each band's vertices sorted by angle, as (angle << 32 | vertex), the angle
+		// offset to be positive so its float bits sort as it does
+		long[][] bands = new long[BANDS][];
+		float[][] bandAngle = new float[BANDS][];
+		double[] bandAlpha = new double[BANDS];
+		for (int k = 0; k < BANDS; k++) bands[k] = new long[bandSize[k]];
+		Arrays.fill(bandSize, 0);
+		for (int v = 0; v < n; v++) {
+			if (band[v] < 0) continue;
+			bands[band[v]][bandSize[band[v]]++] = (long) Float.floatToIntBits((float) angle[v] + 4.0f) << 32 | v;
+			bandAlpha[band[v]] = Math.max(bandAlpha[band[v]], alpha[v]);
+		}
+		for (int k = 0; k < BANDS; k++) {
+			Arrays.sort(bands[k]);
+			bandAngle[k] = new float[bands[k].length];
+			for (int i = 0; i < bands[k].length; i++) bandAngle[k][i] = Float.intBitsToFloat((int) (bands[k][i] >>> 32)) - 4.0f;
+		}
+		
+		int[] result = new int[16];
+		int count = 0;
+		for (int a = 0; a < n; a++) {
+			PlannerProgress.advance(progress, 1);
+			if (band[a] < 0) {
+				for (int b = 0; b < n; b++) {
+					if (b == a || (band[b] < 0 && b < a) || Point.computeDistance(points[a], points[b]) < shortLength) continue;
+					if (2 * count + 2 > result.length) result = Arrays.copyOf(result, 2 * result.length);
+					result[2 * count] = Math.min(a, b);
+					result[2 * count++ + 1] = Math.max(a, b);
+				}
+				continue;
+			}
+			double opposite = angle[a] > 0.0 ? angle[a] - Math.PI : angle[a] + Math.PI;
+			for (int k = 0; k < BANDS; k++) {
+				double half = alpha[a] + bandAlpha[k] + NEAR_SLACK;
+				int from = 0, to = bands[k].length;
+				if (half < Math.PI) {
+					from = lowerBound(bandAngle[k], opposite - half);
+					to = lowerBound(bandAngle[k], opposite + half);
+				}
+				
+				// a window past -pi or pi continues from the other end
+				for (int pass = 0; pass < 2; pass++) {
+					for (int i = from; i < to; i++) {
+						int b = (int) bands[k][i];
+						if (b <= a) continue;
+						double apart = Math.abs(angle[a] - angle[b]);
+						if (apart > Math.PI) apart = 2.0 * Math.PI - apart;
+						if (apart < Math.PI - alpha[a] - alpha[b] - NEAR_SLACK) continue;
+						if (Point.computeDistance(points[a], points[b]) < shortLength) continue;
+						if (2 * count + 2 > result.length) result = Arrays.copyOf(result, 2 * result.length);
+						result[2 * count] = a;
+						result[2 * count++ + 1] = b;
+					}
+					if (half >= Math.PI) break;
+					if (opposite - half < -Math.PI) {
+						from = lowerBound(bandAngle[k], opposite - half + 2.0 * Math.PI);
+						to = bands[k].length;
+					}
+					else if (opposite + half > Math.PI) {
+						from = 0;
+						to = lowerBound(bandAngle[k], opposite + half - 2.0 * Math.PI);
+					}
+					else break;
+				}
+			}
+		}
+		
+		// the short pairs, found among the vertices sorted by x
+		long[] byX = new long[n];
+		for (int v = 0; v < n; v++) {
+			int bits = Float.floatToIntBits(points[v].x);
+			byX[v] = (long) (bits ^ ((bits >> 31) & 0x7FFFFFFF)) << 32 | v;
+		}
+		Arrays.sort(byX);
+		for (int i = 0; i < n; i++) {
+			int a = (int) byX[i];
+			for (int j = i + 1; j < n && points[(int) byX[j]].x - points[a].x < shortLength; j++) {
+				int b = (int) byX[j];
+				if (Point.computeDistance(points[a], points[b]) >= shortLength) continue;
+				if (2 * count + 2 > result.length) result = Arrays.copyOf(result, 2 * result.length);
+				result[2 * count] = Math.min(a, b);
+				result[2 * count++ + 1] = Math.max(a, b);
+			}
+		}
+		return Arrays.copyOf(result, 2 * count);
+	}
+	
+	// the index of the first value in a sorted array that is not below key
+	private static int lowerBound(float[] values, double key) {
+		int lo = 0, hi = values.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (values[mid] < key) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+	
+	// determines whether a single obstacle blocks the edge between two points; the
+	// bounding-box check leaves room for the tolerance Poly.intersects allows
+	static boolean blocks(Poly obstacle, Point p, Point q) {
+		float length = Point.computeDistance(p, q);
+		if (length > 0.0f) {
+			float margin = 2.0f * Edge.EPSILON / length;
+			if (Math.max(p.x, q.x) + margin < obstacle.getMinX() || Math.min(p.x, q.x) - margin > obstacle.getMaxX()
+					|| Math.max(p.y, q.y) + margin < obstacle.getMinY() || Math.min(p.y, q.y) - margin > obstacle.getMaxY()) {
+				return false;
+			}
+		}
+		return obstacle.intersects(p.x, p.y, q.x, q.y) || obstacle.containsPoint((p.x + q.x) / 2.0f, (p.y + q.y) / 2.0f);
 	}
 	
 	/**
@@ -85,13 +669,61 @@ public class Environment {
 		return superGrownObstacles;
 	}
 	
+	/**
+	 * Replaces the grown obstacles with ones grown earlier from the same obstacles,
+	 * such as those read back from a GraphCache, instead of growing them again.
+	 * @param grownSet the obstacles grown by the size of the robot
+	 * @param superGrownSet the grown obstacles grown again with the safe method, or null if not safely grown
+	 */
+	public void setGrownObstacles(Poly[] grownSet, Poly[] superGrownSet) {
+		grownObstacles = grownSet;
+		superGrownObstacles = superGrownSet != null ? superGrownSet : new Poly[grownSet.length];
+		grown = true;
+		superGrown = superGrownSet != null;
+		graphComputed = false;
+		pathComputed = false;
+		roadMap = null;
+	}
+	
 	/**
 	 * Internally computes the visibility graph of all obstacles, i.e. the set of all
 	 * edges between all obstacle vertices that do not intersect any obstacles.
 	 * @param obstacles the list of obstacles
 	 */
 	public void computeVisibilityGraph(Poly[] obstacles) {
-		// all points
+		computeVisibilityGraph(obstacles, false);
+	}
+	
+	/**
+	 * Internally computes the visibility graph of all obstacles, i.e. the set of all
+	 * edges between all obstacle vertices that do not intersect any obstacles.
+	 * If a road map over the same obstacles is at hand (see getRoadMap and setRoadMap),
+	 * its graph is reused and only the start and goal are connected to it; the sweep
+	 * flag and the number of workers (see setWorkers) are then ignored.
+	 * @param obstacles the list of obstacles
+	 * @param sweep if true, uses a rotational plane sweep around each vertex rather than
+	 * testing every pair of vertices against every obstacle
+	 * @throws java.util.concurrent.CancellationException if the attached progress is cancelled
+	 */
+	public void computeVisibilityGraph(Poly[] obstacles, boolean sweep) {
+		if (roadMap != null && roadMapObstacles == obstacles) {
+			computeVisibilityGraphFromRoadMap(obstacles);
+			return;
+		}
+		if (sweep) {
+			computeVisibilityGraphSweep(obstacles);
+			return;
+		}
+		long startNanos = System.nanoTime();
+		Object event = PlannerMetrics.beginStage();
+		LongAdder pairs = null, tests = null;
+		if (PlannerMetrics.isCounting(metrics, event)) {
+			pairs = new LongAdder();
+			tests = new LongAdder();
+		}
+		
+		// all points, interned to vertex ids
+		VisibilityGraph.Builder builder = new VisibilityGraph.Builder();
 		ArrayList<Point> allPoints = new ArrayList<Point>();
 		allPoints.add(startPoint);
 		allPoints.add(goalPoint);
@@ -102,153 +734,478 @@ public class Environment {
 				allPoints.add(currentObstacle[j]);
 			}
 		}
-		ArrayList<Edge> allEdges = new ArrayList<Edge>();
-		for (int i = 0; i < allPoints.size(); i++) {
-			for (int j = 0; j < allPoints.size(); j++) {
-				allEdges.add((new Edge(allPoints.get(i), allPoints.get(j))));
+		int[] ids = new int[allPoints.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = builder.addVertex(allPoints.get(i));
+		}
+		
+		// index the obstacles once per set so each pair only tests nearby geometry
+		if (grid == null || gridObstacles != obstacles) {
+			grid = new ObstacleGrid(boundary, obstacles);
+			gridObstacles = obstacles;
+		}
+		
+		// visibility is symmetric, so each unordered pair is tested once; rows of
+		// pairs are independent, so they may be split across worker threads
+		Point[] points = allPoints.toArray(new Point[allPoints.size()]);
+		int[][] visibleRows = new int[points.length][];
+		PlannerProgress.begin(progress, "Visibility", (long) points.length * (points.length - 1) / 2);
+		if (workers > 1) {
+			ForkJoinPool pool = new ForkJoinPool(workers);
+			try {
+				pool.invoke(new VisibilityRowTask(points, ids, grid, visibleRows, null, 0, points.length, pairs, tests, progress));
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+		else {
+			for (int i = 0; i < points.length; i++) {
+				visibleRows[i] = computeVisibleRow(points, ids, grid, i, pairs, tests, progress, null);
 			}
 		}
 		
-		// this isn't working for some reason
+		// assemble in row order so the result does not depend on the thread count
 		ArrayList<Edge> validEdges = new ArrayList<Edge>();
-		for (int i = 0; i < obstacles.length; i++) {
-			for (int j = 0; j < allEdges.size(); j++) {
-				if (boundary.intersects(allEdges.get(j))) {
-					allEdges.get(j).setValid(false);
-				}
-				if (obstacles[i].intersects(allEdges.get(j))) {
-					allEdges.get(j).setValid(false);
-				}
-				if (obstacles[i].containsPoint(allEdges.get(j).getMidPoint())) {
-					allEdges.get(j).setValid(false);
-				}
+		for (int i = 0; i < points.length; i++) {
+			for (int k = 0; k < visibleRows[i].length; k++) {
+				int j = visibleRows[i][k];
+				validEdges.add(new Edge(points[i], points[j]));
+				builder.addEdge(ids[i], ids[j]);
+			}
+		}
+		visibilityGraph = validEdges.toArray(new Edge[validEdges.size()]);
+		PlannerMetrics.endStage(metrics, event, PlannerMetrics.VISIBILITY, startNanos,
+				pairs == null ? 0 : pairs.sum(), tests == null ? 0 : tests.sum(), visibilityGraph.length, 0, 0);
+		buildGraph(builder);
+		startId = ids[0];
+		goalId = ids[1];
+		graphObstacles = obstacles;
+		graphComputed = true;
+	}
+	
+	// finds every j > i such that points i and j can see each other, adding the
+	// number of pairs and intersection tests to the counters if they are not null,
+	// and reporting the pairs to the progress, which may cancel the stage, as it goes;
+	// if blockers is not null, blockers[j - i - 1] holds the polygon that last blocked
+	// the pair (or -1), which is tried first and then replaced with this pair's blocker
+	private static int[] computeVisibleRow(Point[] points, int[] ids, ObstacleGrid grid, int i,
+			LongAdder pairs, LongAdder tests, PlannerProgress progress, int[] blockers) {
+		int[] row = new int[points.length - i];
+		int[] rowTests = tests == null ? null : new int[1];
+		int count = 0, rowPairs = 0;
+		for (int j = i + 1; j < points.length; j++) {
+			if (((j - i) & (PROGRESS_INTERVAL - 1)) == 0) PlannerProgress.advance(progress, PROGRESS_INTERVAL);
+			if (ids[i] == ids[j]) continue;
+			rowPairs++;
+			float x1 = points[i].x, y1 = points[i].y, x2 = points[j].x, y2 = points[j].y;
+			if (blockers == null) {
+				if (grid.isVisible(x1, y1, x2, y2, rowTests)) row[count++] = j;
+				continue;
+			}
+			int blocker = blockers[j - i - 1];
+			if (blocker >= 0) {
+				if (rowTests != null) rowTests[0]++;
+				if (grid.isBlockedBy(blocker, x1, y1, x2, y2)) continue;
+			}
+			blocker = grid.findBlocker(x1, y1, x2, y2, rowTests);
+			blockers[j - i - 1] = blocker;
+			if (blocker < 0) row[count++] = j;
+		}
+		if (pairs != null) pairs.add(rowPairs);
+		if (tests != null) tests.add(rowTests[0]);
+		PlannerProgress.advance(progress, (points.length - 1 - i) & (PROGRESS_INTERVAL - 1));
+		return Arrays.copyOf(row, count);
+	}
+	
+	// lays out the graph, timing it as its own stage
+	private void buildGraph(VisibilityGraph.Builder builder) {
+		long startNanos = System.nanoTime();
+		Object event = PlannerMetrics.beginStage();
+		graph = builder.build();
+		PlannerMetrics.endStage(metrics, event, PlannerMetrics.GRAPH_BUILD, startNanos, 0, 0, 0, 0, 0);
+	}
+	
+	/**
+	 * Attaches metrics that accumulate the time and work of each planning stage.
+	 * @param metrics the metrics to add to, or null to stop collecting
+	 */
+	public void setMetrics(PlannerMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Returns the metrics attached to the environment.
+	 * @return the metrics, or null if none are attached
+	 */
+	public PlannerMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Attaches progress that growth, visibility and search report to. Cancelling
+	 * it stops the running stage with a CancellationException and leaves the
+	 * obstacles, graph and path as they were before the stage.
+	 * @param progress the progress to report to, or null for none
+	 */
+	public void setProgress(PlannerProgress progress) {
+		this.progress = progress;
+	}
+	
+	/**
+	 * Returns the progress attached to the environment.
+	 * @return the progress, or null if none is attached
+	 */
+	public PlannerProgress getProgress() {
+		return progress;
+	}
+	
+	/**
+	 * Sets the number of threads used to test candidate edges when computing the
+	 * visibility graph by pairwise testing. The graph is identical for any count.
+	 * @param workers the number of threads; 1 computes the graph on the calling thread
+	 */
+	public void setWorkers(int workers) {
+		this.workers = Math.max(1, workers);
+	}
+	
+	/**
+	 * Returns the number of threads used to compute the visibility graph.
+	 * @return the number of worker threads
+	 */
+	public int getWorkers() {
+		return workers;
+	}
+	
+	// computes the same graph as the pairwise test using a VisibilitySweep
+	private void computeVisibilityGraphSweep(Poly[] obstacles) {
+		long startNanos = System.nanoTime();
+		Object event = PlannerMetrics.beginStage();
+		VisibilitySweep vs = new VisibilitySweep(boundary, obstacles, new Point[] {startPoint, goalPoint});
+		VisibilityGraph.Builder builder = new VisibilityGraph.Builder();
+		int[] ids = new int[vs.numCandidates()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = builder.addVertex(vs.getCandidate(i));
+		}
+		
+		ArrayList<Edge> validEdges = new ArrayList<Edge>();
+		int[] visible = new int[ids.length];
+		PlannerProgress.begin(progress, "Visibility", ids.length);
+		for (int i = 0; i < ids.length; i++) {
+			PlannerProgress.advance(progress, 1);
+			int count = vs.visibleFrom(i, visible);
+			for (int k = 0; k < count; k++) {
+				int j = visible[k];
+				if (ids[i] == ids[j]) continue;
+				validEdges.add(new Edge(vs.getCandidate(i), vs.getCandidate(j)));
+				builder.addEdge(ids[i], ids[j]);
 			}
 		}
-		for (int i = 0; i < allEdges.size(); i++) {
-			if (allEdges.get(i).isValid()) {
-				validEdges.add(allEdges.get(i));
+		visibilityGraph = validEdges.toArray(new Edge[validEdges.size()]);
+		long n = ids.length;
+		PlannerMetrics.endStage(metrics, event, PlannerMetrics.VISIBILITY, startNanos,
+				n * (n - 1) / 2, 0, visibilityGraph.length, 0, 0);
+		buildGraph(builder);
+		startId = ids[0];
+		goalId = ids[1];
+		graphObstacles = obstacles;
+		graphComputed = true;
+	}
+	
+	// adds the start and goal to the road map's graph of the obstacles, sweeping
+	// around only those two points, which gives the same graph as computing it afresh
+	private void computeVisibilityGraphFromRoadMap(Poly[] obstacles) {
+		long startNanos = System.nanoTime();
+		Object event = PlannerMetrics.beginStage();
+		VisibilityGraph roads = roadMap.getGraph();
+		VisibilityGraph.Builder builder = new VisibilityGraph.Builder();
+		int start = builder.addVertex(startPoint);
+		int goal = builder.addVertex(goalPoint);
+		int n = roads.numVertices();
+		int[] ids = new int[n];
+		for (int v = 0; v < n; v++) {
+			ids[v] = builder.addVertex(roads.getVertex(v));
+		}
+		
+		ArrayList<Edge> validEdges = new ArrayList<Edge>();
+		int[] offsets = roads.getOffsets(), targets = roads.getTargets();
+		for (int v = 0; v < n; v++) {
+			for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+				int u = targets[k];
+				if (u < v) continue;
+				validEdges.add(new Edge(roads.getVertex(v), roads.getVertex(u)));
+				builder.addEdge(ids[v], ids[u]);
+			}
+		}
+		VisibilitySweep vs = new VisibilitySweep(boundary, obstacles, new Point[] {startPoint, goalPoint});
+		int[] free = {start, goal};
+		int[] visible = new int[vs.numCandidates()];
+		PlannerProgress.begin(progress, "Visibility", free.length);
+		for (int i = 0; i < free.length; i++) {
+			PlannerProgress.advance(progress, 1);
+			int count = vs.visibleFrom(i, visible);
+			for (int k = 0; k < count; k++) {
+				int id = builder.addVertex(vs.getCandidate(visible[k]));
+				if (id == free[i]) continue;
+				validEdges.add(new Edge(vs.getCandidate(i), vs.getCandidate(visible[k])));
+				builder.addEdge(free[i], id);
 			}
 		}
 		visibilityGraph = validEdges.toArray(new Edge[validEdges.size()]);
+		PlannerMetrics.endStage(metrics, event, PlannerMetrics.VISIBILITY, startNanos,
+				2L * vs.numCandidates(), 0, visibilityGraph.length, 0, 0);
+		buildGraph(builder);
+		startId = start;
+		goalId = goal;
+		graphObstacles = obstacles;
 		graphComputed = true;
 	}
 	
+	/**
+	 * Returns the most recently computed visibility graph.
+	 * @return the visibility graph, or null if none has been computed
+	 */
+	public VisibilityGraph getVisibilityGraph() {
+		return graph;
+	}
+	
 	/**
 	 * Computes the shortest path from start to goal, represented as an
 	 * ordered set of Points.
 	 * @return an array of points representing the points in the shortest path
 	 */
 	public Point[] computeShortestPath() {
-		PathFinder pf = new PathFinder(startPoint, goalPoint, visibilityGraph);
-		shortestPath = pf.getShortestPath();
+		return computeShortestPath(false);
+	}
+	
+	/**
+	 * Computes the shortest path from start to goal, represented as an
+	 * ordered set of Points.
+	 * @param aStar true to search with A*, false to use dijkstra's algorithm
+	 * @return an array of points representing the points in the shortest path
+	 * @throws java.util.concurrent.CancellationException if the attached progress is cancelled
+	 */
+	public Point[] computeShortestPath(boolean aStar) {
+		PathFinder pf = new PathFinder(graph, startId, goalId);
+		pf.setMetrics(metrics);
+		pf.setProgress(progress);
+		shortestPath = pf.getShortestPath(aStar);
+		nodesExpanded = pf.getNodesExpanded();
 		pathComputed = true;
 		return shortestPath;
 	}
 	
+	/**
+	 * Returns a road map of the visibility between the vertices of a set of obstacles,
+	 * for answering shortest path queries between any points. The road map is built
+	 * the first time it is requested for a set of obstacles and reused after that.
+	 * @param obstacles the list of obstacles
+	 * @return the road map for the obstacles
+	 * @throws java.util.concurrent.CancellationException if the attached progress is cancelled
+	 */
+	public RoadMap getRoadMap(Poly[] obstacles) {
+		if (roadMap == null || roadMapObstacles != obstacles) {
+			roadMap = new RoadMap(boundary, obstacles, metrics, progress);
+			roadMapObstacles = obstacles;
+		}
+		roadMap.setMetrics(metrics);
+		return roadMap;
+	}
+	
+	/**
+	 * Supplies a road map built earlier, such as one read back from a GraphCache.
+	 * getRoadMap returns it for the road map's obstacles, and computeVisibilityGraph
+	 * builds on its graph for those obstacles.
+	 * @param roadMap the road map, over obstacles from this environment
+	 */
+	public void setRoadMap(RoadMap roadMap) {
+		this.roadMap = roadMap;
+		roadMapObstacles = roadMap.getObstacles();
+	}
+	
+	/**
+	 * Computes the shortest path between two arbitrary points around a set of
+	 * obstacles. Only the two points' visibility is computed for each query; the
+	 * graph between obstacle vertices is shared by every query on the same obstacles.
+	 * @param obstacles the list of obstacles
+	 * @param start the start point
+	 * @param goal the goal point
+	 * @param aStar true to search with A*, false to use dijkstra's algorithm
+	 * @return an array of points representing the points in the shortest path, or null if there is none
+	 */
+	public Point[] computeShortestPath(Poly[] obstacles, Point start, Point goal, boolean aStar) {
+		RoadMap map = getRoadMap(obstacles);
+		Point[] path = map.findPath(start, goal, aStar);
+		nodesExpanded = map.getNodesExpanded();
+		return path;
+	}
+	
+	/**
+	 * Returns the number of nodes expanded by the last shortest path search.
+	 * @return the number of expanded nodes
+	 */
+	public int getNodesExpanded() {
+		return nodesExpanded;
+	}
+	
 	/**
 	 * Writes the shortest path to a file as a list of travel distances and
 	 * turn angles for the robot.
 	 * @param filename the name of the file to write to
 	 */
 	public void writePathToFile(String filename) {
-		ArrayList<Float> data = new ArrayList<Float>();
-		float prevAngle = 0.0f, nextAngle = 0.0f, turnAngle = 0.0f, distance = 0.0f;
-		for (int i = 1; i < shortestPath.length; i++) {
-			nextAngle = Point.computeAngle(shortestPath[i], shortestPath[i-1]);
-			turnAngle = nextAngle - prevAngle;
-			data.add(-turnAngle);
-			prevAngle = nextAngle;
-			distance = Point.computeDistance(shortestPath[i], shortestPath[i-1]);
-			data.add(distance);
-		}
-		
+		writePathToFile(shortestPath, filename);
+	}
+	
+	/**
+	 * Writes a path to a file as a list of travel distances and turn angles for the robot.
+	 * @param path the points of the path, in order
+	 * @param filename the name of the file to write to
+	 */
+	public static void writePathToFile(Point[] path, String filename) {
+		float[] data = computeCommands(path);
 		PrintWriter p = null;
 		try {
 			p = new PrintWriter(new File(filename));
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 		}
-		for (int i = 0; i < data.size(); i++) {
-			if (i < data.size() - 1) p.println(data.get(i));
-			else p.print(data.get(i));
+		for (int i = 0; i < data.length; i++) {
+			if (i < data.length - 1) p.println(data[i]);
+			else p.print(data[i]);
 		}
 		p.close();
 	}
 	
 	/**
-	 * Draws the environment with color coding.
-	 * @param g the graphics context
-	 * @param scale the scale factor
+	 * Converts a path to the robot's commands: alternating turn angles and travel distances.
+	 * @param path the points of the path, in order
+	 * @return the turn angle and travel distance for each leg of the path
 	 */
-	public void draw(Graphics g, float scale) {
-		g.setColor(Color.DARK_GRAY);
-		boundary.draw(g, scale, minX, minY);
-		g.setColor(Color.CYAN);
-		for (int i = 0; i < obstacles.length; i++) {
-			obstacles[i].draw(g, scale, minX, minY);
-		}
-		if (graphComputed) {
-			g.setColor(Color.GRAY);
-			for (int i = 0; i < visibilityGraph.length; i++) {
-				visibilityGraph[i].draw(g, scale, minX, minY);
-			}
-		}
-		if (grown) {
-			g.setColor(Color.MAGENTA);
-			for (int i = 0; i < grownObstacles.length; i++) {
-				grownObstacles[i].draw(g, scale, minX, minY);
-			}
-		if (superGrown) {
-			g.setColor(Color.PINK);
-			for (int i = 0; i < superGrownObstacles.length; i++) {
-				superGrownObstacles[i].draw(g, scale, minX, minY);
-			}
-		}
+	public static float[] computeCommands(Point[] path) {
+		float[] data = new float[2 * Math.max(0, path.length - 1)];
+		float prevAngle = 0.0f, nextAngle = 0.0f, turnAngle = 0.0f, distance = 0.0f;
+		for (int i = 1; i < path.length; i++) {
+			nextAngle = Point.computeAngle(path[i], path[i-1]);
+			turnAngle = nextAngle - prevAngle;
+			data[2 * i - 2] = -turnAngle;
+			prevAngle = nextAngle;
+			distance = Point.computeDistance(path[i], path[i-1]);
+			data[2 * i - 1] = distance;
 		}
-		if (pathComputed) {
-			g.setColor(Color.YELLOW);
-			for (int i = 0; i < shortestPath.length - 1; i++) {
-				(new Edge(shortestPath[i], shortestPath[i+1])).draw(g, scale, minX, minY);
+		return data;
+	}
+	
+	/**
+	 * Returns the outer boundary of the environment.
+	 * @return the boundary polygon
+	 */
+	public Poly getBoundary() {
+		return boundary;
+	}
+	
+	/**
+	 * Returns the obstacles in the environment, before growth.
+	 * @return a Poly array of the obstacles
+	 */
+	public Poly[] getObstacles() {
+		return obstacles;
+	}
+	
+	/**
+	 * Returns the start point.
+	 * @return the point the robot starts at
+	 */
+	public Point getStartPoint() {
+		return startPoint;
+	}
+	
+	/**
+	 * Returns the goal point.
+	 * @return the point the robot must reach
+	 */
+	public Point getGoalPoint() {
+		return goalPoint;
+	}
+	
+	/**
+	 * Returns the square the size of the robot drawn around the start point.
+	 * @return the start shape
+	 */
+	public Poly getStartShape() {
+		return startShape;
+	}
+	
+	/**
+	 * Returns the square the size of the robot drawn around the goal point.
+	 * @return the goal shape
+	 */
+	public Poly getGoalShape() {
+		return goalShape;
+	}
+	
+	/**
+	 * Returns the edges of the most recently computed visibility graph.
+	 * @return the visibility graph's edges, or null if none has been computed
+	 */
+	public Edge[] getVisibilityEdges() {
+		if (!graphComputed) return null;
+		if (visibilityGraph == null) visibilityGraph = listEdges(graph);
+		return visibilityGraph;
+	}
+	
+	// the edges of a graph, each once from its lower vertex, in the order a full
+	// computation lists them; an updated graph only lists them when asked
+	private static Edge[] listEdges(VisibilityGraph graph) {
+		int[] offsets = graph.getOffsets(), targets = graph.getTargets();
+		Edge[] edges = new Edge[graph.numEdges()];
+		int count = 0;
+		for (int a = 0; a < graph.numVertices(); a++) {
+			for (int k = offsets[a]; k < offsets[a + 1]; k++) {
+				if (targets[k] > a) edges[count++] = new Edge(graph.getVertex(a), graph.getVertex(targets[k]));
 			}
 		}
-		g.setColor(Color.GREEN);
-		startShape.draw(g, scale, minX, minY);
-		g.setColor(Color.RED);
-		goalShape.draw(g, scale, minX, minY);
-		g.setColor(Color.WHITE);
-		
+		return edges;
+	}
+	
+	/**
+	 * Returns the most recently computed shortest path from start to goal.
+	 * @return the points of the path, or null if none has been computed
+	 */
+	public Point[] getShortestPath() {
+		return pathComputed ? shortestPath : null;
+	}
+	
+	/**
+	 * Returns whether the obstacles have been grown.
+	 * @return true if the obstacles have been grown, false otherwise
+	 */
+	public boolean isGrown() {
+		return grown;
+	}
+	
+	/**
+	 * Returns whether the obstacles have been grown with the safe method.
+	 * @return true if the obstacles have been safely grown, false otherwise
+	 */
+	public boolean isSuperGrown() {
+		return superGrown;
 	}
 	
 	/**
 	 * Creates a new environment from input files.
-	 * @param worldFile text file defining the boundary and obstacles
+	 * @param worldFile text or binary file (see WorldFile) defining the boundary and obstacles
 	 * @param startGoalFile text file defining the start and goal points
 	 * @return a new Environment object with the given properties
 	 */
 	public static Environment parseFiles(String worldFile, String startGoalFile) throws Exception {
 		// wall and obstacles
-		Scanner read = new Scanner(new File(worldFile));
-		Poly wall = null;
-		Poly[] objects = null;
-		int numObjects = Integer.parseInt(read.nextLine());
-		objects = new Poly[numObjects - 1];
-		for (int i = 0; i < numObjects; i++) {
-			int numVerts = Integer.parseInt(read.nextLine());
-			//System.out.println("verts: " + numVerts);
-			float[] vertsX = new float[numVerts], vertsY = new float[numVerts];
-			for (int j = 0; j < numVerts; j++) {
-				String[] pointString = read.nextLine().split(" ");
-				//System.out.println(Arrays.toString(pointString));
-				vertsX[j] = Float.parseFloat(pointString[0]);
-				vertsY[j] = Float.parseFloat(pointString[1]);
-			}
-			if (i == 0) wall = new Poly(vertsX, vertsY, numVerts, false);
-			else objects[i - 1] = new Poly(vertsX, vertsY, numVerts, false);
-		}
-		read.close();
+		Poly[] world = parseWorld(worldFile);
+		Poly wall = world[0];
+		Poly[] objects = Arrays.copyOfRange(world, 1, world.length);
 		
 		// start and goal points
-		read = new Scanner(new File(startGoalFile));
+		Scanner read = new Scanner(new File(startGoalFile));
 		String[] startString = read.nextLine().split(" ");
 		float startx = Float.parseFloat(startString[0]);
 		float starty = Float.parseFloat(startString[1]);
@@ -260,4 +1217,111 @@ public class Environment {
 		return new Environment(wall, objects, startx, starty, goalx, goaly);
 	}
 	
+	/**
+	 * Creates a new environment from a world file alone, for planning between
+	 * points given later. The start and goal are placed at the center of the boundary.
+	 * @param worldFile text or binary file (see WorldFile) defining the boundary and obstacles
+	 * @return a new Environment object with the given boundary and obstacles
+	 */
+	public static Environment parseWorldFile(String worldFile) throws Exception {
+		Poly[] world = parseWorld(worldFile);
+		Poly wall = world[0];
+		float cx = wall.getCenterX(), cy = wall.getCenterY();
+		return new Environment(wall, Arrays.copyOfRange(world, 1, world.length), cx, cy, cx, cy);
+	}
+	
+	// reads the boundary followed by the obstacles from a world file, text or binary
+	private static Poly[] parseWorld(String worldFile) throws Exception {
+		return WorldFile.read(worldFile);
+	}
+	
+	/**
+	 * Grows a range of (clearance, obstacle) pairs, numbered clearance by clearance,
+	 * splitting the range in half until it is small enough to run directly.
+	 */
+	private static class GrowTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private static final int POLYGONS_PER_TASK = 64;
+		
+		private Poly[] obstacles, footprints;
+		private Poly[][] grownSets;
+		private int lo, hi;
+		private PlannerProgress progress;
+		
+		GrowTask(Poly[] obstacles, Poly[] footprints, Poly[][] grownSets, int lo, int hi, PlannerProgress progress) {
+			this.obstacles = obstacles;
+			this.footprints = footprints;
+			this.grownSets = grownSets;
+			this.lo = lo;
+			this.hi = hi;
+			this.progress = progress;
+		}
+		
+		@Override
+		protected void compute() {
+			if (hi - lo <= POLYGONS_PER_TASK) {
+				for (int n = lo; n < hi; n++) {
+					int k = n / obstacles.length, i = n % obstacles.length;
+					grownSets[k][i] = obstacles[i].grow(footprints[k]);
+				}
+				PlannerProgress.advance(progress, hi - lo);
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new GrowTask(obstacles, footprints, grownSets, lo, mid, progress),
+					new GrowTask(obstacles, footprints, grownSets, mid, hi, progress));
+		}
+		
+	}
+	
+	/**
+	 * Computes the visible pairs for a range of rows, splitting the range in half
+	 * until it is small enough to run directly.
+	 */
+	private static class VisibilityRowTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private static final int ROWS_PER_TASK = 8;
+		
+		private Point[] points;
+		private int[] ids;
+		private ObstacleGrid grid;
+		private int[][] visibleRows, blockerRows;
+		private int lo, hi;
+		private LongAdder pairs, tests;
+		private PlannerProgress progress;
+		
+		VisibilityRowTask(Point[] points, int[] ids, ObstacleGrid grid, int[][] visibleRows, int[][] blockerRows,
+				int lo, int hi, LongAdder pairs, LongAdder tests, PlannerProgress progress) {
+			this.points = points;
+			this.ids = ids;
+			this.grid = grid;
+			this.visibleRows = visibleRows;
+			this.blockerRows = blockerRows;
+			this.lo = lo;
+			this.hi = hi;
+			this.pairs = pairs;
+			this.tests = tests;
+			this.progress = progress;
+		}
+		
+		@Override
+		protected void compute() {
+			if (hi - lo <= ROWS_PER_TASK) {
+				for (int i = lo; i < hi; i++) {
+					visibleRows[i] = computeVisibleRow(points, ids, grid, i, pairs, tests, progress,
+							blockerRows == null ? null : blockerRows[i]);
+				}
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new VisibilityRowTask(points, ids, grid, visibleRows, blockerRows, lo, mid, pairs, tests, progress),
+					new VisibilityRowTask(points, ids, grid, visibleRows, blockerRows, mid, hi, pairs, tests, progress));
+		}
+		
+	}
+	
 }
\ No newline at end of file
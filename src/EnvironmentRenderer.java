@@ -0,0 +1,336 @@
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws an Environment with Swing. Kept apart from the planning classes so
+ * that planning alone never loads the desktop toolkit.
+ * <p>
+ * The boundary, obstacles, visibility graph and grown obstacles only change when
+ * a planning stage is recomputed, so each is indexed once in a SegmentGrid and
+ * the layers are composed into an image that is reused until one of them or the
+ * view changes. A repaint then draws the image and the path, start and goal on top.
+ * <p>
+ * Only the segments in cells overlapping the visible area are drawn. Segments
+ * that land on the same pixels as one already drawn are skipped, and a layer
+ * with too many segments in view is drawn as shaded cells, darker where more
+ * segments pass, so the cost of a frame is bounded however large the map.
+ * @author Andrew Goldin
+ */
+public class EnvironmentRenderer {
+
+	private static final int BOUNDARY = 0, OBSTACLES = 1, GRAPH = 2, GROWN = 3, SUPER_GROWN = 4;
+	private static final Color[] LAYER_COLORS = { Color.DARK_GRAY, Color.CYAN, Color.GRAY, Color.MAGENTA, Color.PINK };
+	private static final int MAX_DRAWN_ENTRIES = 40000;
+	private static final float MIN_SCALE = 1e-3f, MAX_SCALE = 1e5f;
+
+	private Environment env;
+	private float scale = 65.0f, offsetX = 0.0f, offsetY = 0.0f;
+	private Object[] layerSources = new Object[LAYER_COLORS.length];
+	private SegmentGrid[] layerGrids = new SegmentGrid[LAYER_COLORS.length];
+	private int[][] layerResults = new int[LAYER_COLORS.length][];
+	private BufferedImage layerImage;
+	private float imageScale, imageOffsetX, imageOffsetY;
+	private double imageDeviceScale;
+	private Line2D.Float line = new Line2D.Float();
+
+	/**
+	 * Creates a renderer for an environment.
+	 * @param env the environment to draw
+	 */
+	public EnvironmentRenderer(Environment env) {
+		this.env = env;
+	}
+
+	/**
+	 * Sets the view. A point (x, y) in the world is drawn at screen position
+	 * ((x - minX) * scale + offsetX, (y - minY) * scale + offsetY), where minX and
+	 * minY are the smallest coordinates of the boundary.
+	 * @param scale the number of pixels per world unit
+	 * @param offsetX the screen x position of the boundary's left edge
+	 * @param offsetY the screen y position of the boundary's top edge
+	 */
+	public void setView(float scale, float offsetX, float offsetY) {
+		this.scale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale));
+		this.offsetX = offsetX;
+		this.offsetY = offsetY;
+	}
+
+	/**
+	 * Returns the number of pixels per world unit.
+	 * @return the scale of the view
+	 */
+	public float getScale() {
+		return scale;
+	}
+
+	/**
+	 * Zooms the view, keeping the world point under a screen position in place.
+	 * @param factor the amount to multiply the scale by
+	 * @param screenX the screen x position to zoom around
+	 * @param screenY the screen y position to zoom around
+	 */
+	public void zoom(float factor, float screenX, float screenY) {
+		float newScale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+		factor = newScale / scale;
+		setView(newScale, screenX - (screenX - offsetX) * factor, screenY - (screenY - offsetY) * factor);
+	}
+
+	/**
+	 * Moves the view.
+	 * @param dx the number of pixels to move the map right
+	 * @param dy the number of pixels to move the map down
+	 */
+	public void pan(float dx, float dy) {
+		setView(scale, offsetX + dx, offsetY + dy);
+	}
+
+	/**
+	 * Sets the view so the whole boundary fits in a screen rectangle, no larger than a given scale.
+	 * @param left the screen x position of the rectangle
+	 * @param top the screen y position of the rectangle
+	 * @param width the width of the rectangle, in pixels
+	 * @param height the height of the rectangle, in pixels
+	 * @param maxScale the largest scale to use
+	 */
+	public void fit(float left, float top, float width, float height, float maxScale) {
+		Poly boundary = env.getBoundary();
+		float fitScale = Math.min(width / Math.max(boundary.getMaxX() - boundary.getMinX(), 1e-3f),
+				height / Math.max(boundary.getMaxY() - boundary.getMinY(), 1e-3f));
+		setView(Math.min(maxScale, fitScale), left, top);
+	}
+
+	/**
+	 * Draws the environment with color coding, reusing an image of the layers
+	 * if neither they nor the view have changed since the last call.
+	 * @param g the graphics context
+	 * @param width the width of the area to draw in, in pixels
+	 * @param height the height of the area to draw in, in pixels
+	 */
+	public void draw(Graphics g, int width, int height) {
+		Graphics2D g2 = (Graphics2D) g;
+		double deviceScale = g2.getTransform().getScaleX();
+		int imageWidth = (int) Math.ceil(width * deviceScale), imageHeight = (int) Math.ceil(height * deviceScale);
+		if (imageWidth <= 0 || imageHeight <= 0) return;
+		boolean changed = updateLayers();
+		if (changed || layerImage == null || layerImage.getWidth() != imageWidth || layerImage.getHeight() != imageHeight
+				|| imageScale != scale || imageOffsetX != offsetX || imageOffsetY != offsetY || imageDeviceScale != deviceScale) {
+			if (layerImage == null || layerImage.getWidth() != imageWidth || layerImage.getHeight() != imageHeight) {
+				layerImage = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB);
+			}
+			Graphics2D ig = layerImage.createGraphics();
+			ig.setComposite(AlphaComposite.Clear);
+			ig.fillRect(0, 0, imageWidth, imageHeight);
+			ig.setComposite(AlphaComposite.SrcOver);
+			ig.scale(deviceScale, deviceScale);
+			drawLayers(ig, width, height);
+			ig.dispose();
+			imageScale = scale;
+			imageOffsetX = offsetX;
+			imageOffsetY = offsetY;
+			imageDeviceScale = deviceScale;
+		}
+		g2.drawImage(layerImage, 0, 0, width, height, null);
+		drawOverlay(g2);
+	}
+
+	/**
+	 * Discards every cached layer, so the next draw rebuilds them from the environment.
+	 */
+	public void invalidate() {
+		for (int i = 0; i < layerSources.length; i++) {
+			layerSources[i] = null;
+			layerGrids[i] = null;
+			layerResults[i] = null;
+		}
+		layerImage = null;
+	}
+
+	// re-indexes any layer whose geometry the environment has replaced,
+	// returning true if a layer changed
+	private boolean updateLayers() {
+		Object[] sources = new Object[layerSources.length];
+		sources[BOUNDARY] = env.getBoundary();
+		sources[OBSTACLES] = env.getObstacles();
+		sources[GRAPH] = env.getVisibilityEdges();
+		if (env.isGrown()) {
+			sources[GROWN] = env.getGrownObstacles();
+			if (env.isSuperGrown()) sources[SUPER_GROWN] = env.getSuperGrownObstacles();
+		}
+		boolean changed = false;
+		for (int i = 0; i < sources.length; i++) {
+			if (sources[i] == layerSources[i] && (sources[i] == null || layerGrids[i] != null)) continue;
+			layerSources[i] = sources[i];
+			layerGrids[i] = sources[i] == null ? null : createGrid(sources[i]);
+			layerResults[i] = sources[i] == null ? null : new int[layerGrids[i].numSegments()];
+			changed = true;
+		}
+		return changed;
+	}
+
+	// lists a layer's polygon outlines or edges as segments and indexes them
+	private static SegmentGrid createGrid(Object source) {
+		Poly[] polys = null;
+		if (source instanceof Poly) polys = new Poly[] { (Poly) source };
+		else if (source instanceof Poly[]) polys = (Poly[]) source;
+		if (polys == null) {
+			Edge[] edges = (Edge[]) source;
+			float[] coords = new float[4 * edges.length];
+			for (int i = 0; i < edges.length; i++) addSegment(coords, i, edges[i].p.x, edges[i].p.y, edges[i].q.x, edges[i].q.y);
+			return new SegmentGrid(coords, edges.length);
+		}
+		int count = 0;
+		for (int i = 0; i < polys.length; i++) {
+			int n = polys[i].numPoints();
+			count += polys[i].isGoal() ? n * (n - 1) / 2 : n;
+		}
+		float[] coords = new float[4 * count];
+		int s = 0;
+		for (int i = 0; i < polys.length; i++) {
+			float[] xs = polys[i].getXPoints(), ys = polys[i].getYPoints();
+			for (int a = 0; a < xs.length; a++) {
+				if (polys[i].isGoal()) {
+					for (int b = a + 1; b < xs.length; b++) s = addSegment(coords, s, xs[a], ys[a], xs[b], ys[b]);
+				}
+				else {
+					int prev = a == 0 ? xs.length - 1 : a - 1;
+					s = addSegment(coords, s, xs[prev], ys[prev], xs[a], ys[a]);
+				}
+			}
+		}
+		return new SegmentGrid(coords, count);
+	}
+
+	// writes a segment's coordinates at index s, returning the next index
+	private static int addSegment(float[] coords, int s, float x1, float y1, float x2, float y2) {
+		coords[4 * s] = x1;
+		coords[4 * s + 1] = y1;
+		coords[4 * s + 2] = x2;
+		coords[4 * s + 3] = y2;
+		return s + 1;
+	}
+
+	// draws the layers in order, culled to the visible area
+	private void drawLayers(Graphics2D g, int width, int height) {
+		float minX = env.getBoundary().getMinX(), minY = env.getBoundary().getMinY();
+
+		// the visible area in world coordinates, widened by a pixel
+		float viewMinX = minX + (-1.0f - offsetX) / scale, viewMaxX = minX + (width + 1.0f - offsetX) / scale;
+		float viewMinY = minY + (-1.0f - offsetY) / scale, viewMaxY = minY + (height + 1.0f - offsetY) / scale;
+		for (int i = 0; i < layerGrids.length; i++) {
+			SegmentGrid grid = layerGrids[i];
+			if (grid == null) continue;
+			g.setColor(LAYER_COLORS[i]);
+			if (grid.countEntries(viewMinX, viewMinY, viewMaxX, viewMaxY) > MAX_DRAWN_ENTRIES) {
+				drawDensity(g, grid, viewMinX, viewMinY, viewMaxX, viewMaxY, LAYER_COLORS[i]);
+				continue;
+			}
+			int count = grid.query(viewMinX, viewMinY, viewMaxX, viewMaxY, layerResults[i]);
+			drawSegments(g, grid.getCoords(), layerResults[i], count, minX, minY);
+		}
+	}
+
+	// draws segments as one shape, leaving out any that would cover the same pixels as one already drawn
+	private void drawSegments(Graphics2D g, float[] coords, int[] segments, int count, float minX, float minY) {
+		Path2D.Float shape = new Path2D.Float(Path2D.WIND_NON_ZERO, 2 * count);
+		long[] drawn = new long[Integer.highestOneBit(Math.max(count, 1)) * 4];
+		for (int k = 0; k < count; k++) {
+			int s = segments[k];
+			float x1 = (coords[4 * s] - minX) * scale + offsetX, y1 = (coords[4 * s + 1] - minY) * scale + offsetY;
+			float x2 = (coords[4 * s + 2] - minX) * scale + offsetX, y2 = (coords[4 * s + 3] - minY) * scale + offsetY;
+			if (!addPixels(drawn, x1, y1, x2, y2)) continue;
+			shape.moveTo(x1, y1);
+			shape.lineTo(x2, y2);
+		}
+		g.draw(shape);
+	}
+
+	// records the pixels a segment joins, returning false if a segment joining them was already recorded;
+	// segments reaching far off screen are always drawn
+	private static boolean addPixels(long[] drawn, float x1, float y1, float x2, float y2) {
+		int px1 = Math.round(x1), py1 = Math.round(y1), px2 = Math.round(x2), py2 = Math.round(y2);
+		if (Math.max(Math.max(Math.abs(px1), Math.abs(py1)), Math.max(Math.abs(px2), Math.abs(py2))) >= 1 << 15) return true;
+		long a = ((long) (px1 & 0xFFFF) << 16) | (py1 & 0xFFFF), b = ((long) (px2 & 0xFFFF) << 16) | (py2 & 0xFFFF);
+		long key = a < b ? (a << 32) | b : (b << 32) | a;
+		key++; // 0 marks an empty slot
+		int mask = drawn.length - 1;
+		for (int h = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask; ; h = (h + 1) & mask) {
+			if (drawn[h] == key) return false;
+			if (drawn[h] == 0) {
+				drawn[h] = key;
+				return true;
+			}
+		}
+	}
+
+	// draws each visible cell of a grid shaded by how many segments pass through it
+	private void drawDensity(Graphics2D g, SegmentGrid grid, float viewMinX, float viewMinY, float viewMaxX, float viewMaxY,
+			Color color) {
+		float minX = env.getBoundary().getMinX(), minY = env.getBoundary().getMinY(), size = grid.getCellSize();
+		int c0 = Math.max(0, (int) ((viewMinX - grid.getMinX()) / size)), c1 = Math.min(grid.getCols() - 1, (int) ((viewMaxX - grid.getMinX()) / size));
+		int r0 = Math.max(0, (int) ((viewMinY - grid.getMinY()) / size)), r1 = Math.min(grid.getRows() - 1, (int) ((viewMaxY - grid.getMinY()) / size));
+		int max = 1;
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) max = Math.max(max, grid.cellCount(c, r));
+		}
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				int count = grid.cellCount(c, r);
+				if (count == 0) continue;
+				g.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), 40 + 215 * count / max));
+				int x = Math.round((grid.getMinX() + c * size - minX) * scale + offsetX);
+				int y = Math.round((grid.getMinY() + r * size - minY) * scale + offsetY);
+				int x2 = Math.round((grid.getMinX() + (c + 1) * size - minX) * scale + offsetX);
+				int y2 = Math.round((grid.getMinY() + (r + 1) * size - minY) * scale + offsetY);
+				g.fillRect(x, y, Math.max(1, x2 - x), Math.max(1, y2 - y));
+			}
+		}
+	}
+
+	// draws the path, start and goal, which are small enough to draw on every repaint
+	private void drawOverlay(Graphics2D g) {
+		Point[] path = env.getShortestPath();
+		if (path != null) {
+			g.setColor(Color.YELLOW);
+			for (int i = 0; i < path.length - 1; i++) {
+				drawLine(g, path[i], path[i+1]);
+			}
+		}
+		g.setColor(Color.GREEN);
+		drawPoly(g, env.getStartShape());
+		g.setColor(Color.RED);
+		drawPoly(g, env.getGoalShape());
+		g.setColor(Color.WHITE);
+	}
+
+	// draws a polygon's edges, or every pair of its points for a goal object
+	private void drawPoly(Graphics2D g, Poly poly) {
+		if (poly.isGoal()) {
+			Point[] points = poly.getPoints();
+			for (int i = 0; i < points.length; i++) {
+				for (int j = 0; j < points.length; j++) {
+					drawLine(g, points[i], points[j]);
+				}
+			}
+		}
+		else {
+			Edge[] edges = poly.getEdges();
+			for (int i = 0; i < edges.length; i++) {
+				drawLine(g, edges[i].p, edges[i].q);
+			}
+		}
+	}
+
+	// draws a segment in world coordinates on the screen
+	private void drawLine(Graphics2D g, Point p, Point q) {
+		float minX = env.getBoundary().getMinX(), minY = env.getBoundary().getMinY();
+		line.setLine((p.x - minX) * scale + offsetX, (p.y - minY) * scale + offsetY,
+				(q.x - minX) * scale + offsetX, (q.y - minY) * scale + offsetY);
+		g.draw(line);
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,189 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Saves the grown obstacles and road map of a world to a file and reads them back
+ * on later runs, instead of growing the obstacles and building the visibility
+ * graph again. A cache file is keyed by a SHA-256 hash of the world file's
+ * contents, the robot footprint and whether the obstacles were grown safely;
+ * loading checks the key and ignores a file made for anything else. The file
+ * is memory-mapped on load and its arrays copied out in bulk. Layout, big-endian:
+ * <pre>
+ *   int magic ("RPGC"), int version, byte key[32], int safe
+ *   the grown obstacles, then the safely grown obstacles if safe, as in a binary WorldFile
+ *   int vertices, int directed edges
+ *   float x[vertices], float y[vertices], int offsets[vertices + 1], int targets[edges], float weights[edges]
+ * </pre>
+ * @author Andrew Goldin
+ */
+public class GraphCache {
+
+	private static final int MAGIC = 0x52504743;
+	private static final int VERSION = 1;
+	private static final int KEY_BYTES = 32;
+
+	/**
+	 * Computes the key of the cache for an environment just read from a world file.
+	 * @param worldFile the world file the environment was read from
+	 * @param env the environment, whose start shape is the robot footprint
+	 * @param safe whether the obstacles are to be grown safely
+	 * @return the SHA-256 hash identifying the grown obstacles and road map
+	 * @throws IOException if the world file cannot be read
+	 */
+	public static byte[] computeKey(String worldFile, Environment env, boolean safe) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		digest.update(WorldFile.map(worldFile));
+
+		// the exact shapes grow adds to the obstacles, since the start's position
+		// can round their offsets differently than the diameter alone suggests
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(VERSION);
+		out.writeFloat(Poly.ROBOT_DIAMETER);
+		out.writeBoolean(safe);
+		WorldFile.writePolygons(out, safe ? new Poly[] {env.getStartShape().reflect(), env.getSafeShape().reflect()}
+				: new Poly[] {env.getStartShape().reflect()});
+		out.flush();
+		digest.update(bytes.toByteArray());
+		return digest.digest();
+	}
+
+	/**
+	 * Grows the obstacles of an environment and builds their road map, reading
+	 * both from the cache directory when a cache for the same world and robot is
+	 * there and writing one otherwise. A cache that cannot be read is rebuilt.
+	 * @param env the environment, just read from the world file
+	 * @param worldFile the world file the environment was read from
+	 * @param safe if true, grows the obstacles by 1.5x the size of the robot
+	 * @param cacheDir the directory holding cache files, created if missing
+	 * @return true if the cache was used, false if the obstacles and road map were computed
+	 * @throws IOException if the world file cannot be read or the cache cannot be written
+	 * @throws java.util.concurrent.CancellationException if the environment's progress is cancelled
+	 */
+	public static boolean prepare(Environment env, String worldFile, boolean safe, String cacheDir) throws IOException {
+		byte[] key = computeKey(worldFile, env, safe);
+		File file = new File(cacheDir, toHex(key) + ".vgc");
+		if (file.isFile()) {
+			try {
+				if (load(file.getPath(), key, env)) return true;
+			}
+			catch (IOException e) {
+				// unreadable or corrupt, so compute and overwrite it
+			}
+			catch (IllegalArgumentException e) {
+				// a graph that does not fit the obstacles, likewise
+			}
+		}
+		env.growObstacles(safe);
+		env.getRoadMap(safe ? env.getSuperGrownObstacles() : env.getGrownObstacles());
+		file.getParentFile().mkdirs();
+
+		// write beside the cache and move it into place, so no reader sees half a file
+		File partial = new File(file.getPath() + ".tmp");
+		save(partial.getPath(), key, env);
+		Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return false;
+	}
+
+	/**
+	 * Writes an environment's grown obstacles and the road map over them to a cache file.
+	 * The road map is built first if the environment does not have one yet.
+	 * @param cacheFile the file to write
+	 * @param key the key from computeKey
+	 * @param env the environment, with its obstacles grown
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void save(String cacheFile, byte[] key, Environment env) throws IOException {
+		if (!env.isGrown()) throw new IllegalStateException("obstacles have not been grown");
+		boolean safe = env.isSuperGrown();
+		VisibilityGraph graph = env.getRoadMap(safe ? env.getSuperGrownObstacles() : env.getGrownObstacles()).getGraph();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.write(key);
+			out.writeInt(safe ? 1 : 0);
+			WorldFile.writePolygons(out, env.getGrownObstacles());
+			if (safe) WorldFile.writePolygons(out, env.getSuperGrownObstacles());
+			int n = graph.numVertices();
+			int[] offsets = graph.getOffsets(), targets = graph.getTargets();
+			float[] weights = graph.getWeights();
+			out.writeInt(n);
+			out.writeInt(targets.length);
+			for (int v = 0; v < n; v++) out.writeFloat(graph.getVertex(v).x);
+			for (int v = 0; v < n; v++) out.writeFloat(graph.getVertex(v).y);
+			for (int k = 0; k <= n; k++) out.writeInt(offsets[k]);
+			for (int k = 0; k < targets.length; k++) out.writeInt(targets[k]);
+			for (int k = 0; k < weights.length; k++) out.writeFloat(weights[k]);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads the grown obstacles and road map from a cache file into an environment,
+	 * if the file was written for the given key.
+	 * @param cacheFile the file to read
+	 * @param key the key from computeKey
+	 * @param env the environment, read from the world file the key was computed from
+	 * @return true if the cache was loaded, false if it was made for another key
+	 * @throws IOException if the file cannot be read or is corrupt
+	 */
+	public static boolean load(String cacheFile, byte[] key, Environment env) throws IOException {
+		ByteBuffer buffer = WorldFile.map(cacheFile);
+		if (buffer.limit() < 12 + KEY_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) return false;
+		byte[] fileKey = new byte[KEY_BYTES];
+		buffer.position(8);
+		buffer.get(fileKey);
+		if (!Arrays.equals(fileKey, key)) return false;
+		boolean safe = buffer.getInt() != 0;
+		Poly[] grownSet = WorldFile.readPolygons(buffer);
+		Poly[] superGrownSet = safe ? WorldFile.readPolygons(buffer) : null;
+		if (grownSet.length != env.numObstacles() || (safe && superGrownSet.length != grownSet.length)) {
+			throw new IOException("cache does not match the environment's obstacles");
+		}
+
+		if (buffer.remaining() < 8) throw new IOException("cache is truncated");
+		int n = buffer.getInt(), m = buffer.getInt();
+		if (n < 0 || m < 0 || buffer.remaining() != 8L * n + 4L * (n + 1) + 8L * m) throw new IOException("cache is truncated");
+		float[] xs = new float[n], ys = new float[n];
+		int[] offsets = new int[n + 1], targets = new int[m];
+		float[] weights = new float[m];
+		buffer.asFloatBuffer().get(xs);
+		buffer.position(buffer.position() + 4 * n);
+		buffer.asFloatBuffer().get(ys);
+		buffer.position(buffer.position() + 4 * n);
+		buffer.asIntBuffer().get(offsets);
+		buffer.position(buffer.position() + 4 * (n + 1));
+		buffer.asIntBuffer().get(targets);
+		buffer.position(buffer.position() + 4 * m);
+		buffer.asFloatBuffer().get(weights);
+		Point[] vertices = new Point[n];
+		for (int v = 0; v < n; v++) vertices[v] = new Point(xs[v], ys[v]);
+
+		VisibilityGraph graph = VisibilityGraph.fromArrays(vertices, offsets, targets, weights);
+		env.setGrownObstacles(grownSet, superGrownSet);
+		env.setRoadMap(new RoadMap(env.getBoundary(), safe ? superGrownSet : grownSet, graph, env.getMetrics()));
+		return true;
+	}
+
+	// a key as lowercase hexadecimal, for naming its cache file
+	private static String toHex(byte[] key) {
+		StringBuilder s = new StringBuilder(2 * key.length);
+		for (byte b : key) s.append(Character.forDigit((b >> 4) & 15, 16)).append(Character.forDigit(b & 15, 16));
+		return s.toString();
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,164 @@
+import java.util.Arrays;
+
+/**
+ * A binary min-heap over integer ids in the range [0, capacity), keyed by floats.
+ * Supports decrease-key in O(log n) by tracking each id's position in the heap,
+ * and performs no allocation after construction.
+ * @author Andrew Goldin
+ */
+public class IndexedMinHeap {
+
+	private int[] heap, pos;
+	private float[] keys;
+	private int size;
+
+	/**
+	 * Constructs an empty heap able to hold ids 0 through capacity - 1.
+	 * @param capacity the number of distinct ids
+	 */
+	public IndexedMinHeap(int capacity) {
+		heap = new int[capacity];
+		pos = new int[capacity];
+		keys = new float[capacity];
+		Arrays.fill(pos, -1);
+		size = 0;
+	}
+
+	/**
+	 * Removes all ids from the heap.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			pos[heap[i]] = -1;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Returns whether the heap is empty.
+	 * @return true if no ids are in the heap, false otherwise
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the number of ids in the heap.
+	 * @return the size of the heap
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Determines whether an id is currently in the heap.
+	 * @param id the id to check
+	 * @return true if the heap contains the id, false otherwise
+	 */
+	public boolean contains(int id) {
+		return pos[id] >= 0;
+	}
+
+	/**
+	 * Returns the key currently associated with an id in the heap.
+	 * @param id the id
+	 * @return the key of the id
+	 */
+	public float getKey(int id) {
+		return keys[id];
+	}
+
+	/**
+	 * Inserts an id, or lowers its key if it is already present with a larger key.
+	 * @param id the id to insert or update
+	 * @param key the new key
+	 * @return true if the heap changed, false if the id already had a smaller or equal key
+	 */
+	public boolean insertOrDecrease(int id, float key) {
+		if (pos[id] < 0) {
+			keys[id] = key;
+			heap[size] = id;
+			pos[id] = size;
+			size++;
+			siftUp(pos[id]);
+			return true;
+		}
+		if (key < keys[id]) {
+			keys[id] = key;
+			siftUp(pos[id]);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the smallest key in the heap without removing it.
+	 * @return the minimum key
+	 */
+	public float peekKey() {
+		return keys[heap[0]];
+	}
+
+	/**
+	 * Returns the id with the smallest key without removing it.
+	 * @return the id at the top of the heap
+	 */
+	public int peek() {
+		return heap[0];
+	}
+
+	/**
+	 * Removes and returns the id with the smallest key.
+	 * @return the id that was at the top of the heap
+	 */
+	public int poll() {
+		int top = heap[0];
+		size--;
+		pos[top] = -1;
+		if (size > 0) {
+			heap[0] = heap[size];
+			pos[heap[0]] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	// moves the entry at index i up until the heap property holds
+	private void siftUp(int i) {
+		int id = heap[i];
+		float key = keys[id];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			int p = heap[parent];
+			if (keys[p] <= key) break;
+			heap[i] = p;
+			pos[p] = i;
+			i = parent;
+		}
+		heap[i] = id;
+		pos[id] = i;
+	}
+
+	// moves the entry at index i down until the heap property holds
+	private void siftDown(int i) {
+		int id = heap[i];
+		float key = keys[id];
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			int c = heap[child];
+			int right = child + 1;
+			if (right < size && keys[heap[right]] < keys[c]) {
+				child = right;
+				c = heap[child];
+			}
+			if (key <= keys[c]) break;
+			heap[i] = c;
+			pos[c] = i;
+			i = child;
+		}
+		heap[i] = id;
+		pos[id] = i;
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,403 @@
+import java.util.Arrays;
+
+/**
+ * A uniform grid over the boundary and obstacles of an environment. Each cell
+ * lists the polygon edges and vertices inside it and the obstacles whose bounds
+ * overlap it, so a segment only has to be tested against the geometry in the
+ * cells it passes through rather than against every polygon.
+ * @author Andrew Goldin
+ */
+public class ObstacleGrid {
+
+	private Poly boundary;
+	private Poly[] obstacles;
+	private float[] ax, ay, bx, by, vx, vy;
+	private int[] owner;
+	private float minX, minY, cellSize;
+	private int cols, rows;
+	private int[] obstacleStart, obstacleItems, edgeStart, edgeItems, vertexStart, vertexItems;
+
+	/**
+	 * Builds a grid over the given boundary and obstacles.
+	 * @param boundary the outer boundary of the environment
+	 * @param obstacles the obstacles to index
+	 */
+	public ObstacleGrid(Poly boundary, Poly[] obstacles) {
+		this.boundary = boundary;
+		this.obstacles = obstacles;
+
+		// gather every edge, oriented as Poly's own edges, and every vertex
+		int numEdges = boundary.numPoints();
+		for (int i = 0; i < obstacles.length; i++) numEdges += obstacles[i].numPoints();
+		ax = new float[numEdges];
+		ay = new float[numEdges];
+		bx = new float[numEdges];
+		by = new float[numEdges];
+		vx = new float[numEdges];
+		vy = new float[numEdges];
+		owner = new int[numEdges];
+		int n = addPolygon(boundary, obstacles.length, 0);
+		for (int i = 0; i < obstacles.length; i++) n = addPolygon(obstacles[i], i, n);
+
+		// size cells so each holds a few edges on average
+		minX = boundary.getMinX();
+		minY = boundary.getMinY();
+		float maxX = boundary.getMaxX(), maxY = boundary.getMaxY();
+		for (int i = 0; i < obstacles.length; i++) {
+			minX = Math.min(minX, obstacles[i].getMinX());
+			minY = Math.min(minY, obstacles[i].getMinY());
+			maxX = Math.max(maxX, obstacles[i].getMaxX());
+			maxY = Math.max(maxY, obstacles[i].getMaxY());
+		}
+		float width = Math.max(maxX - minX, 1e-3f), height = Math.max(maxY - minY, 1e-3f);
+		cellSize = (float) Math.sqrt(4.0 * width * height / numEdges);
+		cols = Math.max(1, Math.min((int) (width / cellSize) + 1, 1024));
+		rows = Math.max(1, Math.min((int) (height / cellSize) + 1, 1024));
+		cellSize = Math.max(width / cols, height / rows) * 1.0001f;
+
+		// count, then fill, the items in each cell
+		int numCells = cols * rows;
+		obstacleStart = new int[numCells + 1];
+		edgeStart = new int[numCells + 1];
+		vertexStart = new int[numCells + 1];
+		for (int pass = 0; pass < 2; pass++) {
+			int[] obstacleFill = pass == 0 ? obstacleStart : obstacleStart.clone();
+			int[] edgeFill = pass == 0 ? edgeStart : edgeStart.clone();
+			int[] vertexFill = pass == 0 ? vertexStart : vertexStart.clone();
+			for (int i = 0; i < obstacles.length; i++) {
+				int c0 = col(obstacles[i].getMinX()), c1 = col(obstacles[i].getMaxX());
+				int r0 = row(obstacles[i].getMinY()), r1 = row(obstacles[i].getMaxY());
+				for (int r = r0; r <= r1; r++) {
+					for (int c = c0; c <= c1; c++) {
+						if (pass == 0) obstacleFill[r * cols + c + 1]++;
+						else obstacleItems[obstacleFill[r * cols + c]++] = i;
+					}
+				}
+			}
+			for (int e = 0; e < numEdges; e++) {
+				int c0 = col(Math.min(ax[e], bx[e])), c1 = col(Math.max(ax[e], bx[e]));
+				int r0 = row(Math.min(ay[e], by[e])), r1 = row(Math.max(ay[e], by[e]));
+				for (int r = r0; r <= r1; r++) {
+					for (int c = c0; c <= c1; c++) {
+						if (pass == 0) edgeFill[r * cols + c + 1]++;
+						else edgeItems[edgeFill[r * cols + c]++] = e;
+					}
+				}
+				int cell = row(vy[e]) * cols + col(vx[e]);
+				if (pass == 0) vertexFill[cell + 1]++;
+				else vertexItems[vertexFill[cell]++] = e;
+			}
+			if (pass == 0) {
+				for (int k = 0; k < numCells; k++) {
+					obstacleStart[k + 1] += obstacleStart[k];
+					edgeStart[k + 1] += edgeStart[k];
+					vertexStart[k + 1] += vertexStart[k];
+				}
+				obstacleItems = new int[obstacleStart[numCells]];
+				edgeItems = new int[edgeStart[numCells]];
+				vertexItems = new int[vertexStart[numCells]];
+			}
+		}
+	}
+
+	// for update, which fills in the fields itself
+	private ObstacleGrid() {
+	}
+
+	/**
+	 * Returns a grid over the same boundary and obstacles that differ from this
+	 * grid's in the one at index, which was replaced, removed, or appended if index
+	 * is this grid's obstacle count. The cells keep their size and only the changed
+	 * obstacle's bounds, edges and vertices are placed in them; the other items are
+	 * copied and renumbered. An obstacle reaching outside the grid has it built anew.
+	 * @param obstacles the new obstacles
+	 * @param index the index of the obstacle that changed
+	 * @param removed true if the obstacle at index was removed, false if it was replaced or added
+	 * @return a grid over the boundary and the new obstacles
+	 */
+	public ObstacleGrid update(Poly[] obstacles, int index, boolean removed) {
+		Poly added = removed ? null : obstacles[index];
+		float maxX = minX + cols * cellSize, maxY = minY + rows * cellSize;
+		if (added != null && (added.getMinX() < minX || added.getMinY() < minY
+				|| added.getMaxX() > maxX || added.getMaxY() > maxY)) {
+			return new ObstacleGrid(boundary, obstacles);
+		}
+		int oldCount = this.obstacles.length;
+		int first = boundary.numPoints();
+		for (int i = 0; i < index; i++) first += this.obstacles[i].numPoints();
+		int oldPoints = index < oldCount ? this.obstacles[index].numPoints() : 0;
+		int newPoints = added == null ? 0 : added.numPoints();
+
+		// the changed obstacle's edges are spliced into the same place in the edge order
+		ObstacleGrid grid = new ObstacleGrid();
+		grid.boundary = boundary;
+		grid.obstacles = obstacles;
+		grid.minX = minX;
+		grid.minY = minY;
+		grid.cellSize = cellSize;
+		grid.cols = cols;
+		grid.rows = rows;
+		grid.ax = splice(ax, first, oldPoints, newPoints);
+		grid.ay = splice(ay, first, oldPoints, newPoints);
+		grid.bx = splice(bx, first, oldPoints, newPoints);
+		grid.by = splice(by, first, oldPoints, newPoints);
+		grid.vx = splice(vx, first, oldPoints, newPoints);
+		grid.vy = splice(vy, first, oldPoints, newPoints);
+		int[] owners = new int[grid.ax.length];
+		System.arraycopy(owner, 0, owners, 0, first);
+		System.arraycopy(owner, first + oldPoints, owners, first + newPoints, owner.length - first - oldPoints);
+		grid.owner = owners;
+		for (int e = 0; e < owners.length; e++) {
+			if (owners[e] == oldCount) owners[e] = obstacles.length;
+			else if (removed && owners[e] > index) owners[e]--;
+		}
+		if (added != null) grid.addPolygon(added, index, first);
+
+		// old items renumbered, with -1 for those of the changed obstacle
+		int[] obstacleMap = new int[oldCount];
+		for (int i = 0; i < oldCount; i++) obstacleMap[i] = i < index ? i : i == index ? -1 : removed ? i - 1 : i;
+		int[] edgeMap = new int[ax.length];
+		for (int e = 0; e < edgeMap.length; e++) {
+			edgeMap[e] = e < first ? e : e < first + oldPoints ? -1 : e - oldPoints + newPoints;
+		}
+
+		// the changed obstacle's items, as (cell << 32 | item) in cell and item order
+		long[] obstacleAdds = new long[0], edgeAdds = new long[0], vertexAdds = new long[newPoints];
+		if (added != null) {
+			int c0 = col(added.getMinX()), c1 = col(added.getMaxX());
+			int r0 = row(added.getMinY()), r1 = row(added.getMaxY());
+			obstacleAdds = new long[(c1 - c0 + 1) * (r1 - r0 + 1)];
+			int n = 0;
+			for (int r = r0; r <= r1; r++) {
+				for (int c = c0; c <= c1; c++) obstacleAdds[n++] = (long) (r * cols + c) << 32 | index;
+			}
+			n = 0;
+			for (int e = first; e < first + newPoints; e++) {
+				n += (col(Math.max(grid.ax[e], grid.bx[e])) - col(Math.min(grid.ax[e], grid.bx[e])) + 1)
+						* (row(Math.max(grid.ay[e], grid.by[e])) - row(Math.min(grid.ay[e], grid.by[e])) + 1);
+			}
+			edgeAdds = new long[n];
+			n = 0;
+			for (int e = first; e < first + newPoints; e++) {
+				c0 = col(Math.min(grid.ax[e], grid.bx[e]));
+				c1 = col(Math.max(grid.ax[e], grid.bx[e]));
+				r0 = row(Math.min(grid.ay[e], grid.by[e]));
+				r1 = row(Math.max(grid.ay[e], grid.by[e]));
+				for (int r = r0; r <= r1; r++) {
+					for (int c = c0; c <= c1; c++) edgeAdds[n++] = (long) (r * cols + c) << 32 | e;
+				}
+				vertexAdds[e - first] = (long) (row(grid.vy[e]) * cols + col(grid.vx[e])) << 32 | e;
+			}
+			Arrays.sort(obstacleAdds);
+			Arrays.sort(edgeAdds);
+			Arrays.sort(vertexAdds);
+		}
+
+		int[][] cells = mergeCells(obstacleStart, obstacleItems, obstacleMap, obstacleAdds);
+		grid.obstacleStart = cells[0];
+		grid.obstacleItems = cells[1];
+		cells = mergeCells(edgeStart, edgeItems, edgeMap, edgeAdds);
+		grid.edgeStart = cells[0];
+		grid.edgeItems = cells[1];
+		cells = mergeCells(vertexStart, vertexItems, edgeMap, vertexAdds);
+		grid.vertexStart = cells[0];
+		grid.vertexItems = cells[1];
+		return grid;
+	}
+
+	/**
+	 * Determines whether a segment is clear of the boundary and every obstacle, with
+	 * the same result as testing Poly.intersects against the boundary and each
+	 * obstacle and Poly.containsPoint against the segment's midpoint.
+	 * @param e the segment to check
+	 * @return true if the segment is a valid visibility edge, false otherwise
+	 */
+	public boolean isVisible(Edge e) {
+		return isVisible(e, null);
+	}
+
+	/**
+	 * Determines whether a segment is clear of the boundary and every obstacle,
+	 * counting the segment and vertex tests made.
+	 * @param e the segment to check
+	 * @param tests if not null, tests[0] is increased by the number of tests made
+	 * @return true if the segment is a valid visibility edge, false otherwise
+	 */
+	public boolean isVisible(Edge e, int[] tests) {
+		return isVisible(e.p.x, e.p.y, e.q.x, e.q.y, tests);
+	}
+
+	/**
+	 * Determines whether the segment from (x1, y1) to (x2, y2) is clear of the
+	 * boundary and every obstacle, counting the segment and vertex tests made.
+	 * Nothing is allocated, so this suits testing many candidate segments.
+	 * @param tests if not null, tests[0] is increased by the number of tests made
+	 * @return true if the segment is a valid visibility edge, false otherwise
+	 */
+	public boolean isVisible(float x1, float y1, float x2, float y2, int[] tests) {
+		return findBlocker(x1, y1, x2, y2, tests) < 0;
+	}
+
+	/**
+	 * Finds a polygon that blocks the segment from (x1, y1) to (x2, y2), with the same
+	 * result as isVisible as to whether there is one.
+	 * @param tests if not null, tests[0] is increased by the number of tests made
+	 * @return the index of a blocking obstacle, the number of obstacles if the boundary
+	 * blocks the segment, or -1 if the segment is a valid visibility edge
+	 */
+	public int findBlocker(float x1, float y1, float x2, float y2, int[] tests) {
+		int container = findContainer((x1 + x2) / 2.0f, (y1 + y2) / 2.0f);
+		if (container >= 0) return container;
+		float dx = x2 - x1, dy = y2 - y1;
+		float length = (float) Math.sqrt(dx * dx + dy * dy);
+
+		// Edge.containsPoint accepts vertices up to EPSILON / length off the segment
+		float margin = length > 0.0f ? 2.0f * Edge.EPSILON / length : Float.MAX_VALUE;
+		float lowY = Math.min(y1, y2) - margin, highY = Math.max(y1, y2) + margin;
+		int r0 = row(Math.max(lowY, minY)), r1 = row(Math.min(highY, minY + rows * cellSize));
+		if (lowY > minY + rows * cellSize || highY < minY) return -1;
+		int rowStep = y1 <= y2 ? 1 : -1;
+		for (int r = rowStep > 0 ? r0 : r1; r >= r0 && r <= r1; r += rowStep) {
+
+			// the part of the segment within this row, widened by the margin
+			float bandLow = Math.max(minY + r * cellSize - margin, Math.min(y1, y2));
+			float bandHigh = Math.min(minY + (r + 1) * cellSize + margin, Math.max(y1, y2));
+			float xa, xb;
+			if (dy == 0.0f || margin == Float.MAX_VALUE) {
+				xa = Math.min(x1, x2);
+				xb = Math.max(x1, x2);
+			}
+			else {
+				float ta = Math.max(0.0f, Math.min(1.0f, (bandLow - y1) / dy));
+				float tb = Math.max(0.0f, Math.min(1.0f, (bandHigh - y1) / dy));
+				xa = Math.min(x1 + ta * dx, x1 + tb * dx);
+				xb = Math.max(x1 + ta * dx, x1 + tb * dx);
+			}
+			int c0 = col(Math.max(xa - margin, minX)), c1 = col(Math.min(xb + margin, minX + cols * cellSize));
+			if (xb + margin < minX || xa - margin > minX + cols * cellSize) continue;
+			int colStep = x1 <= x2 ? 1 : -1;
+			for (int c = colStep > 0 ? c0 : c1; c >= c0 && c <= c1; c += colStep) {
+				int cell = r * cols + c;
+				for (int k = edgeStart[cell]; k < edgeStart[cell + 1]; k++) {
+					int i = edgeItems[k];
+					if (Edge.crosses(x1, y1, x2, y2, ax[i], ay[i], bx[i], by[i])) {
+						if (tests != null) tests[0] += k - edgeStart[cell] + 1;
+						return owner[i];
+					}
+				}
+				if (tests != null) tests[0] += edgeStart[cell + 1] - edgeStart[cell];
+				for (int k = vertexStart[cell]; k < vertexStart[cell + 1]; k++) {
+					int i = vertexItems[k];
+					if (Edge.containsPoint(x1, y1, x2, y2, vx[i], vy[i])) {
+						if (tests != null) tests[0] += k - vertexStart[cell] + 1;
+						return owner[i];
+					}
+				}
+				if (tests != null) tests[0] += vertexStart[cell + 1] - vertexStart[cell];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Determines whether one polygon blocks the segment from (x1, y1) to (x2, y2),
+	 * testing it as isVisible would. This checks again a blocker found by findBlocker
+	 * for a nearby segment, which is often cheaper than searching the grid.
+	 * @param polygon the index of an obstacle, or the number of obstacles for the boundary
+	 * @return true if the polygon blocks the segment, false otherwise
+	 */
+	public boolean isBlockedBy(int polygon, float x1, float y1, float x2, float y2) {
+		if (polygon == obstacles.length) return boundary.intersects(x1, y1, x2, y2);
+		Poly obstacle = obstacles[polygon];
+		return obstacle.intersects(x1, y1, x2, y2) || obstacle.containsPoint((x1 + x2) / 2.0f, (y1 + y2) / 2.0f);
+	}
+
+	/**
+	 * Determines whether any obstacle contains a point, using Poly.containsPoint.
+	 * @param p the point to check
+	 * @return true if some obstacle contains the point, false otherwise
+	 */
+	public boolean anyContains(Point p) {
+		return anyContains(p.x, p.y);
+	}
+
+	/**
+	 * Determines whether any obstacle contains the point (x, y), using Poly.containsPoint.
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @return true if some obstacle contains the point, false otherwise
+	 */
+	public boolean anyContains(float x, float y) {
+		return findContainer(x, y) >= 0;
+	}
+
+	// the index of an obstacle containing (x, y), or -1 if there is none
+	private int findContainer(float x, float y) {
+		if (x < minX || y < minY || x > minX + cols * cellSize || y > minY + rows * cellSize) return -1;
+		int cell = row(y) * cols + col(x);
+		for (int k = obstacleStart[cell]; k < obstacleStart[cell + 1]; k++) {
+			if (obstacles[obstacleItems[k]].containsPoint(x, y)) return obstacleItems[k];
+		}
+		return -1;
+	}
+
+	// records the edges and vertices of polygon index starting at n, returning the next n
+	private int addPolygon(Poly poly, int index, int n) {
+		float[] xs = poly.getXPoints(), ys = poly.getYPoints();
+		for (int i = 0; i < xs.length; i++) {
+			int a = i == 0 ? xs.length - 1 : i - 1;
+			ax[n] = xs[a];
+			ay[n] = ys[a];
+			bx[n] = xs[i];
+			by[n] = ys[i];
+			vx[n] = xs[i];
+			vy[n] = ys[i];
+			owner[n] = index;
+			n++;
+		}
+		return n;
+	}
+
+	// copies an array with count entries at first replaced by room for added entries
+	private static float[] splice(float[] a, int first, int count, int added) {
+		float[] result = new float[a.length - count + added];
+		System.arraycopy(a, 0, result, 0, first);
+		System.arraycopy(a, first + count, result, first + added, a.length - first - count);
+		return result;
+	}
+
+	// copies one kind of cell list, renumbering its items through map and dropping
+	// those mapped to -1, and merges in added items, keeping each cell in item order;
+	// returns the new starts and items
+	private int[][] mergeCells(int[] start, int[] items, int[] map, long[] adds) {
+		int numCells = cols * rows;
+		int[] newStart = new int[numCells + 1];
+		int[] newItems = new int[items.length + adds.length];
+		int count = 0, next = 0;
+		for (int cell = 0; cell < numCells; cell++) {
+			newStart[cell] = count;
+			for (int k = start[cell]; k < start[cell + 1]; k++) {
+				int item = map[items[k]];
+				if (item < 0) continue;
+				while (next < adds.length && (int) (adds[next] >>> 32) == cell && (int) adds[next] < item) {
+					newItems[count++] = (int) adds[next++];
+				}
+				newItems[count++] = item;
+			}
+			while (next < adds.length && (int) (adds[next] >>> 32) == cell) newItems[count++] = (int) adds[next++];
+		}
+		newStart[numCells] = count;
+		return new int[][] {newStart, Arrays.copyOf(newItems, count)};
+	}
+
+	// column of an x coordinate inside the grid
+	private int col(float x) {
+		return Math.max(0, Math.min(cols - 1, (int) ((x - minX) / cellSize)));
+	}
+
+	// row of a y coordinate inside the grid
+	private int row(float y) {
+		return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellSize)));
+	}
+
+}
\ No newline at end of file
@@ -1,5 +1,4 @@
-import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 
 /**
  * Finds the shortest path between two points given a visibility graph.
@@ -7,9 +6,41 @@ import java.util.LinkedList;
  */
 public class PathFinder {
 
-	private ArrayList<PointNode> verts;
+	private VisibilityGraph graph;
+	private int[] offsets, targets;
+	private float[] weights;
 	private int startIndex, goalIndex;
 	
+	// expansions between progress reports and cancellation checks, a power of two
+	private static final int PROGRESS_INTERVAL = 256;
+	
+	// points attached for individual queries, numbered after the graph's vertices;
+	// attachedMask[v] has bit k set if graph vertex v is connected to attached point k
+	public static final int MAX_ATTACHED = 32;
+	private int numVertices, numAttached;
+	private Point[] attachedPoints;
+	private int[][] attachedNeighbors;
+	private int[] attachedDegree, attachedMask;
+	
+	// search state, reused between queries
+	private float[] distance;
+	private int[] previous;
+	private boolean[] visited;
+	private IndexedMinHeap queue;
+	private int nodesExpanded, queueOperations;
+	private PlannerMetrics metrics;
+	private PlannerProgress progress;
+	
+	// the backward half of a bidirectional search, allocated on first use;
+	// previousBack[v] is the next step from v toward the goal
+	private boolean bidirectional;
+	private float[] distanceBack;
+	private int[] previousBack;
+	private boolean[] visitedBack;
+	private IndexedMinHeap queueBack;
+	private float bestLength;
+	private int meeting;
+	
 	/**
 	 * Constructs a new PathFinder object.
 	 * @param start the start point
@@ -17,22 +48,50 @@ public class PathFinder {
 	 * @param edges the edges defining the visibility graph
 	 */
 	public PathFinder(Point start, Point goal, Edge[] edges) {
+		VisibilityGraph g = VisibilityGraph.fromEdges(edges);
+		init(g, g.indexOf(start), g.indexOf(goal));
+	}
+	
+	/**
+	 * Constructs a new PathFinder object over an already built visibility graph.
+	 * @param graph the visibility graph
+	 * @param startIndex the vertex id of the start point
+	 * @param goalIndex the vertex id of the goal point
+	 */
+	public PathFinder(VisibilityGraph graph, int startIndex, int goalIndex) {
+		init(graph, startIndex, goalIndex);
+	}
+	
+	/**
+	 * Constructs a new PathFinder object for searches between points attached to
+	 * an already built visibility graph.
+	 * @param graph the visibility graph
+	 */
+	public PathFinder(VisibilityGraph graph) {
+		init(graph, -1, -1);
+	}
+	
+	// shared constructor logic
+	private void init(VisibilityGraph graph, int startIndex, int goalIndex) {
+		this.graph = graph;
+		offsets = graph.getOffsets();
+		targets = graph.getTargets();
+		weights = graph.getWeights();
+		this.startIndex = startIndex;
+		this.goalIndex = goalIndex;
 		
-		verts = new ArrayList<PointNode>();
-		for (int i = 0; i < edges.length; i++) {
-			verts.add(new PointNode(edges[i].p));
-		}
-		for (int i = 0; i < verts.size(); i++) {
-			for (int j = 0; j < verts.size(); j++) {
-				if (hasEdge(verts.get(i).point, verts.get(j).point, edges)) {
-					verts.get(i).addConnection(verts.get(j));
-					verts.get(j).addConnection(verts.get(i));
-				}
-			}
-		}
+		numVertices = graph.numVertices();
+		numAttached = 0;
+		attachedPoints = new Point[MAX_ATTACHED];
+		attachedNeighbors = new int[MAX_ATTACHED][];
+		attachedDegree = new int[MAX_ATTACHED];
+		attachedMask = new int[numVertices];
 		
-		startIndex = verts.indexOf(new PointNode(start));
-		goalIndex = verts.indexOf(new PointNode(goal));
+		int n = numVertices + MAX_ATTACHED;
+		distance = new float[n];
+		previous = new int[n];
+		visited = new boolean[n];
+		queue = new IndexedMinHeap(n);
 	}
 	
 	/**
@@ -57,85 +116,317 @@ public class PathFinder {
 	 * @return an ordered list of Points representing the shortest path
 	 */
 	public Point[] getShortestPath() {
-		return dijkstra(verts, startIndex, goalIndex);
+		return getShortestPath(false);
+	}
+	
+	/**
+	 * Returns the shortest path from start to goal using either dijkstra's algorithm
+	 * or A* search. A* uses the straight-line distance to the goal as its heuristic,
+	 * which never overestimates in a visibility graph, so both return a shortest path.
+	 * @param aStar true to use A* search, false to use dijkstra's algorithm
+	 * @return an ordered list of Points representing the shortest path
+	 */
+	public Point[] getShortestPath(boolean aStar) {
+		return search(startIndex, goalIndex, aStar);
+	}
+	
+	/**
+	 * Connects a point that is not in the graph, such as a query's start or goal, to
+	 * some of the graph's vertices or previously attached points. The point is usable
+	 * by searches until detachAll is called, and the graph itself is not modified.
+	 * @param p the point to attach
+	 * @param neighbors the ids of the vertices visible from the point
+	 * @param count the number of entries of neighbors to use
+	 * @return the id of the attached point, numbered after the graph's vertices
+	 */
+	public int attach(Point p, int[] neighbors, int count) {
+		if (numAttached == MAX_ATTACHED) {
+			throw new IllegalStateException("at most " + MAX_ATTACHED + " points may be attached");
+		}
+		int k = numAttached++;
+		attachedPoints[k] = p;
+		attachedNeighbors[k] = Arrays.copyOf(neighbors, count);
+		attachedDegree[k] = count;
+		for (int i = 0; i < count; i++) {
+			int v = neighbors[i];
+			if (v < numVertices) {
+				attachedMask[v] |= 1 << k;
+			}
+			else {
+				// a link between two attached points is listed on both sides
+				int other = v - numVertices;
+				if (attachedDegree[other] == attachedNeighbors[other].length) {
+					attachedNeighbors[other] = Arrays.copyOf(attachedNeighbors[other], attachedDegree[other] + 1);
+				}
+				attachedNeighbors[other][attachedDegree[other]++] = numVertices + k;
+			}
+		}
+		return numVertices + k;
+	}
+	
+	/**
+	 * Removes every attached point, in time proportional to their number of neighbors.
+	 */
+	public void detachAll() {
+		for (int k = 0; k < numAttached; k++) {
+			for (int i = 0; i < attachedDegree[k]; i++) {
+				int v = attachedNeighbors[k][i];
+				if (v < numVertices) attachedMask[v] = 0;
+			}
+			attachedPoints[k] = null;
+			attachedNeighbors[k] = null;
+			attachedDegree[k] = 0;
+		}
+		numAttached = 0;
+	}
+	
+	/**
+	 * Returns the shortest path between two vertices or attached points.
+	 * @param startIndex the id of the start
+	 * @param goalIndex the id of the goal
+	 * @param aStar true to use A* search, false to use dijkstra's algorithm
+	 * @return an ordered list of Points representing the shortest path, or null if there is none
+	 */
+	public Point[] getShortestPath(int startIndex, int goalIndex, boolean aStar) {
+		return search(startIndex, goalIndex, aStar);
+	}
+	
+	/**
+	 * Attaches metrics that accumulate the time and work of each search.
+	 * @param metrics the metrics to add to, or null to stop collecting
+	 */
+	public void setMetrics(PlannerMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Attaches progress that each search reports its expanded nodes to, and that
+	 * can cancel it.
+	 * @param progress the progress to report to, or null for none
+	 */
+	public void setProgress(PlannerProgress progress) {
+		this.progress = progress;
+	}
+	
+	/**
+	 * Chooses whether searches run from the start and the goal at once until they
+	 * meet. Each half only settles the vertices nearer its own end than about half
+	 * the path length, so long routes expand far fewer vertices. Both kinds of
+	 * search return a shortest path.
+	 * @param bidirectional true to search from both ends, false from the start only
+	 */
+	public void setBidirectional(boolean bidirectional) {
+		this.bidirectional = bidirectional;
 	}
 	
-	// performs dijkstra's alg to compute the shortest path
-	private Point[] dijkstra(ArrayList<PointNode> graph, int sourceIndex, int endIndex) {
+	/**
+	 * Returns the number of nodes expanded by the most recent search.
+	 * @return the number of vertices removed from the queue and expanded
+	 */
+	public int getNodesExpanded() {
+		return nodesExpanded;
+	}
+	
+	// performs dijkstra's alg, or A* if aStar is set, to compute the shortest path
+	private Point[] search(int sourceIndex, int endIndex, boolean aStar) {
+		long startNanos = System.nanoTime();
+		Object event = PlannerMetrics.beginStage();
+		Point[] path = bidirectional ? expandBoth(sourceIndex, endIndex, aStar) : expand(sourceIndex, endIndex, aStar);
+		PlannerMetrics.endStage(metrics, event, PlannerMetrics.SEARCH, startNanos, 0, 0, 0, nodesExpanded, queueOperations);
+		return path;
+	}
+	
+	// runs the search loop, counting expanded nodes and queue operations
+	private Point[] expand(int sourceIndex, int endIndex, boolean aStar) {
 		
 		// initializations
-		ArrayList<PointNode> Q = new ArrayList<PointNode>();
-		for (int i = 0; i < verts.size(); i++) {
-			verts.get(i).distance = Float.MAX_VALUE;
-			verts.get(i).visited = false;
-			verts.get(i).previous = null;
-		}
+		Arrays.fill(distance, Float.MAX_VALUE);
+		Arrays.fill(previous, -1);
+		Arrays.fill(visited, false);
+		queue.clear();
+		nodesExpanded = 0;
+		queueOperations = 1;
+		Point end = getVertex(endIndex);
 		
-		verts.get(sourceIndex).distance = 0.0f;
-		Q.add(verts.get(sourceIndex));
+		PlannerProgress.begin(progress, "Search", numVertices + numAttached);
+		distance[sourceIndex] = 0.0f;
+		queue.insertOrDecrease(sourceIndex, aStar ? Point.computeDistance(getVertex(sourceIndex), end) : 0.0f);
 		
-		while (!Q.isEmpty()) {
-			PointNode u = closestUnvisited(Q);
-			if (u.equals(verts.get(endIndex))) {
-				LinkedList<PointNode> stack = new LinkedList<PointNode>();
-				PointNode t = verts.get(endIndex);
-				while (t.previous != null) {
-					stack.push(t);
-					t = t.previous;
-				}
-				stack.push(verts.get(sourceIndex));
-				Point[] finalList = new Point[stack.size()];
-				for (int i = 0; i < finalList.length; i++) {
-					finalList[i] = stack.get(i).point;
-				}
-				return finalList;
+		while (!queue.isEmpty()) {
+			int u = queue.poll();
+			queueOperations++;
+			if (u == endIndex) {
+				return buildPath(sourceIndex, endIndex);
 			}
-			Q.remove(u);
-			u.visited = true;
+			visited[u] = true;
+			nodesExpanded++;
+			if ((nodesExpanded & (PROGRESS_INTERVAL - 1)) == 0) PlannerProgress.advance(progress, PROGRESS_INTERVAL);
 			
-			for (int i = 0; i < u.visiblePoints.size(); i++) {
-				PointNode v = u.visiblePoints.get(i);
-				float alt = u.distance + Point.computeDistance(u.point, v.point);
-				if (alt < v.distance && !v.visited) {
-					v.distance = alt;
-					v.previous = u;
-					Q.add(v);
+			if (u >= numVertices) {
+				int a = u - numVertices;
+				for (int i = 0; i < attachedDegree[a]; i++) {
+					int v = attachedNeighbors[a][i];
+					relax(u, v, Point.computeDistance(attachedPoints[a], getVertex(v)), end, aStar);
 				}
+				continue;
+			}
+			for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+				relax(u, targets[k], weights[k], end, aStar);
+			}
+			for (int mask = attachedMask[u]; mask != 0; mask &= mask - 1) {
+				int v = numVertices + Integer.numberOfTrailingZeros(mask);
+				relax(u, v, Point.computeDistance(graph.getVertex(u), getVertex(v)), end, aStar);
 			}
 		}
 		
 		return null;
 	}
 	
-	// internal method for dijkstra
-	private PointNode closestUnvisited(ArrayList<PointNode> pointSet) {
-		PointNode closest = pointSet.get(0);
-		for (int i = 1; i < pointSet.size(); i++) {
-			if (pointSet.get(i).distance < closest.distance && !pointSet.get(i).visited) {
-				closest = pointSet.get(i);
+	// updates v's distance if reaching it through u is shorter
+	private void relax(int u, int v, float weight, Point end, boolean aStar) {
+		float alt = distance[u] + weight;
+		if (alt < distance[v] && !visited[v]) {
+			distance[v] = alt;
+			previous[v] = u;
+			queue.insertOrDecrease(v, aStar ? alt + Point.computeDistance(getVertex(v), end) : alt);
+			queueOperations++;
+		}
+	}
+	
+	// runs a search from each end, advancing whichever half has the smaller queue,
+	// until the smallest keys of the two queues add up to at least the shortest
+	// path found through a vertex both halves have reached. A* keys both halves with
+	// the average of the two straight-line heuristics, which keeps that test exact
+	private Point[] expandBoth(int sourceIndex, int endIndex, boolean aStar) {
+		if (distanceBack == null) {
+			int n = numVertices + MAX_ATTACHED;
+			distanceBack = new float[n];
+			previousBack = new int[n];
+			visitedBack = new boolean[n];
+			queueBack = new IndexedMinHeap(n);
+		}
+		Arrays.fill(distance, Float.MAX_VALUE);
+		Arrays.fill(previous, -1);
+		Arrays.fill(visited, false);
+		queue.clear();
+		Arrays.fill(distanceBack, Float.MAX_VALUE);
+		Arrays.fill(previousBack, -1);
+		Arrays.fill(visitedBack, false);
+		queueBack.clear();
+		nodesExpanded = 0;
+		queueOperations = 2;
+		Point source = getVertex(sourceIndex), end = getVertex(endIndex);
+		
+		PlannerProgress.begin(progress, "Search", numVertices + numAttached);
+		distance[sourceIndex] = 0.0f;
+		distanceBack[endIndex] = 0.0f;
+		bestLength = sourceIndex == endIndex ? 0.0f : Float.MAX_VALUE;
+		meeting = sourceIndex == endIndex ? sourceIndex : -1;
+		queue.insertOrDecrease(sourceIndex, aStar ? potential(sourceIndex, source, end) : 0.0f);
+		queueBack.insertOrDecrease(endIndex, aStar ? -potential(endIndex, source, end) : 0.0f);
+		
+		while (!queue.isEmpty() && !queueBack.isEmpty() && queue.peekKey() + queueBack.peekKey() < bestLength) {
+			if (queue.size() <= queueBack.size()) {
+				settle(queue.poll(), distance, previous, visited, queue, distanceBack, queueBack, source, end, aStar ? 1.0f : 0.0f);
 			}
+			else {
+				settle(queueBack.poll(), distanceBack, previousBack, visitedBack, queueBack, distance, queue, source, end, aStar ? -1.0f : 0.0f);
+			}
+			queueOperations++;
+			nodesExpanded++;
+			if ((nodesExpanded & (PROGRESS_INTERVAL - 1)) == 0) PlannerProgress.advance(progress, PROGRESS_INTERVAL);
 		}
-		return closest;
+		
+		return meeting < 0 ? null : buildPath(sourceIndex, meeting, endIndex);
 	}
 	
-	// internal class for dijkstra
-	private class PointNode {
-		public Point point;
-		public ArrayList<PointNode> visiblePoints;
-		public float distance;
-		public boolean visited;
-		public PointNode previous;
-		public PointNode(Point p) {
-			point = new Point(p);
-			visiblePoints = new ArrayList<PointNode>();
+	// expands u for one half of a bidirectional search, given that half's arrays and
+	// queue, the other half's distances and queue, and the sign of the heuristic
+	private void settle(int u, float[] near, int[] before, boolean[] done, IndexedMinHeap nearQueue,
+			float[] far, IndexedMinHeap farQueue, Point source, Point end, float sign) {
+		done[u] = true;
+		float du = near[u];
+		if (u >= numVertices) {
+			int a = u - numVertices;
+			for (int i = 0; i < attachedDegree[a]; i++) {
+				int v = attachedNeighbors[a][i];
+				float alt = du + Point.computeDistance(attachedPoints[a], getVertex(v));
+				if (alt < near[v] && !done[v]) link(u, v, alt, near, before, nearQueue, far, farQueue, source, end, sign);
+			}
+			return;
 		}
-		public void addConnection(PointNode p) {
-			visiblePoints.add(p);
+		
+		// most edges of a dense graph lead to vertices already reached more cheaply,
+		// so test those here rather than in link
+		for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+			int v = targets[k];
+			float alt = du + weights[k];
+			if (alt < near[v] && !done[v]) link(u, v, alt, near, before, nearQueue, far, farQueue, source, end, sign);
+		}
+		for (int mask = attachedMask[u]; mask != 0; mask &= mask - 1) {
+			int v = numVertices + Integer.numberOfTrailingZeros(mask);
+			float alt = du + Point.computeDistance(graph.getVertex(u), getVertex(v));
+			if (alt < near[v] && !done[v]) link(u, v, alt, near, before, nearQueue, far, farQueue, source, end, sign);
+		}
+	}
+	
+	// lowers v's distance to alt through u for one half of a bidirectional search, and
+	// keeps the path through v if the other half has reached v and it is the shortest yet
+	private void link(int u, int v, float alt, float[] near, int[] before, IndexedMinHeap nearQueue,
+			float[] far, IndexedMinHeap farQueue, Point source, Point end, float sign) {
+		float key = sign == 0.0f ? alt : alt + sign * potential(v, source, end);
+		boolean meets = far[v] != Float.MAX_VALUE && alt + far[v] < bestLength;
+		
+		// leave out a vertex the stopping test would already rule out
+		if (!meets && !farQueue.isEmpty() && key + farQueue.peekKey() >= bestLength) return;
+		near[v] = alt;
+		before[v] = u;
+		nearQueue.insertOrDecrease(v, key);
+		queueOperations++;
+		if (meets) {
+			bestLength = alt + far[v];
+			meeting = v;
+		}
+	}
+	
+	// half the difference between v's straight-line distances to the goal and to the start
+	private float potential(int v, Point source, Point end) {
+		Point p = getVertex(v);
+		return 0.5f * (Point.computeDistance(p, end) - Point.computeDistance(p, source));
+	}
+	
+	// the location of a graph vertex or attached point
+	private Point getVertex(int v) {
+		return v < numVertices ? graph.getVertex(v) : attachedPoints[v - numVertices];
+	}
+	
+	// walks the previous pointers back from the end to build the path
+	private Point[] buildPath(int sourceIndex, int endIndex) {
+		int length = 1;
+		for (int t = endIndex; t != sourceIndex; t = previous[t]) {
+			length++;
+		}
+		Point[] finalList = new Point[length];
+		for (int t = endIndex, i = length - 1; i >= 0; t = previous[t], i--) {
+			finalList[i] = getVertex(t);
+		}
+		return finalList;
+	}
+	
+	// joins the previous pointers back to the source and the next steps on to the
+	// end at the vertex where the two halves of a bidirectional search met
+	private Point[] buildPath(int sourceIndex, int meetingIndex, int endIndex) {
+		Point[] front = buildPath(sourceIndex, meetingIndex);
+		int length = front.length;
+		for (int t = meetingIndex; t != endIndex; t = previousBack[t]) {
+			length++;
 		}
-		public boolean equals(Object other) {
-			PointNode o = (PointNode) other;
-			return point.equals(o.point);
+		Point[] finalList = Arrays.copyOf(front, length);
+		for (int t = meetingIndex, i = front.length; t != endIndex; i++) {
+			t = previousBack[t];
+			finalList[i] = getVertex(t);
 		}
+		return finalList;
 	}
 	
 }
\ No newline at end of file
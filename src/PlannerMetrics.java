@@ -0,0 +1,195 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accumulates timings and counters for each stage of planning: growing obstacles,
+ * testing candidate edges, building the graph and searching it. Attach one to an
+ * Environment or PathFinder to collect figures; with none attached, planning does
+ * no bookkeeping beyond a few clock reads per stage. Counters are safe to update
+ * from several threads.
+ *
+ * Each stage is also reported as a RoboPath.PlannerStage event to Java Flight
+ * Recorder when a recording with the event enabled is running.
+ * @author Andrew Goldin
+ */
+public class PlannerMetrics {
+
+	public static final int GROW = 0, VISIBILITY = 1, GRAPH_BUILD = 2, SEARCH = 3;
+	private static final String[] STAGE_NAMES = {"grow", "visibility", "graph build", "search"};
+
+	// whether the jdk.jfr module is present, so events can be created without failing
+	private static final boolean JFR_AVAILABLE = ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+
+	private LongAdder[] stageNanos, stageCalls;
+	private LongAdder candidatePairs, intersectionTests, validEdges, nodesExpanded, queueOperations;
+
+	/**
+	 * Creates a set of metrics with every counter at zero.
+	 */
+	public PlannerMetrics() {
+		stageNanos = new LongAdder[STAGE_NAMES.length];
+		stageCalls = new LongAdder[STAGE_NAMES.length];
+		for (int i = 0; i < STAGE_NAMES.length; i++) {
+			stageNanos[i] = new LongAdder();
+			stageCalls[i] = new LongAdder();
+		}
+		candidatePairs = new LongAdder();
+		intersectionTests = new LongAdder();
+		validEdges = new LongAdder();
+		nodesExpanded = new LongAdder();
+		queueOperations = new LongAdder();
+	}
+
+	/**
+	 * Starts a flight recorder event for a stage, if one is being recorded.
+	 * @return the event to pass to endStage, or null if none is being recorded
+	 */
+	public static Object beginStage() {
+		// loading an event class sets up the recorder, which is slow, so wait until it is running
+		if (!JFR_AVAILABLE || !Recorder.isRunning()) return null;
+		return PlannerStageEvent.start();
+	}
+
+	/**
+	 * Ends a stage, adding its time and counts to the metrics, if any, and committing
+	 * its flight recorder event, if any.
+	 * @param metrics the metrics to add to, or null
+	 * @param event the event returned by beginStage
+	 * @param stage the stage, one of GROW, VISIBILITY, GRAPH_BUILD or SEARCH
+	 * @param startNanos the value of System.nanoTime() when the stage began
+	 * @param pairs the number of candidate pairs considered
+	 * @param tests the number of intersection tests made
+	 * @param edges the number of valid edges found
+	 * @param nodes the number of nodes expanded
+	 * @param queueOps the number of priority queue operations
+	 */
+	public static void endStage(PlannerMetrics metrics, Object event, int stage, long startNanos,
+			long pairs, long tests, long edges, long nodes, long queueOps) {
+		if (metrics != null) {
+			metrics.stageNanos[stage].add(System.nanoTime() - startNanos);
+			metrics.stageCalls[stage].increment();
+			metrics.candidatePairs.add(pairs);
+			metrics.intersectionTests.add(tests);
+			metrics.validEdges.add(edges);
+			metrics.nodesExpanded.add(nodes);
+			metrics.queueOperations.add(queueOps);
+		}
+		if (event != null) {
+			PlannerStageEvent.finish(event, STAGE_NAMES[stage], pairs, tests, edges, nodes, queueOps);
+		}
+	}
+
+	/**
+	 * Determines whether counts should be gathered for a stage.
+	 * @param metrics the metrics attached to the planner, or null
+	 * @param event the event returned by beginStage
+	 * @return true if either would receive the counts, false otherwise
+	 */
+	public static boolean isCounting(PlannerMetrics metrics, Object event) {
+		return metrics != null || event != null;
+	}
+
+	/**
+	 * Returns the total time spent in a stage.
+	 * @param stage the stage, one of GROW, VISIBILITY, GRAPH_BUILD or SEARCH
+	 * @return the total duration in nanoseconds
+	 */
+	public long getStageNanos(int stage) {
+		return stageNanos[stage].sum();
+	}
+
+	/**
+	 * Returns the number of times a stage has run.
+	 * @param stage the stage, one of GROW, VISIBILITY, GRAPH_BUILD or SEARCH
+	 * @return the number of runs
+	 */
+	public long getStageCalls(int stage) {
+		return stageCalls[stage].sum();
+	}
+
+	/**
+	 * Returns the number of vertex pairs considered as visibility edges.
+	 * @return the number of candidate pairs
+	 */
+	public long getCandidatePairs() {
+		return candidatePairs.sum();
+	}
+
+	/**
+	 * Returns the number of segment and vertex tests made against candidate edges.
+	 * @return the number of intersection tests
+	 */
+	public long getIntersectionTests() {
+		return intersectionTests.sum();
+	}
+
+	/**
+	 * Returns the number of candidate edges found to be valid.
+	 * @return the number of valid edges
+	 */
+	public long getValidEdges() {
+		return validEdges.sum();
+	}
+
+	/**
+	 * Returns the number of vertices expanded by searches.
+	 * @return the number of expanded nodes
+	 */
+	public long getNodesExpanded() {
+		return nodesExpanded.sum();
+	}
+
+	/**
+	 * Returns the number of inserts, decrease-keys and removals on search queues.
+	 * @return the number of queue operations
+	 */
+	public long getQueueOperations() {
+		return queueOperations.sum();
+	}
+
+	/**
+	 * Sets every counter back to zero.
+	 */
+	public void reset() {
+		for (int i = 0; i < STAGE_NAMES.length; i++) {
+			stageNanos[i].reset();
+			stageCalls[i].reset();
+		}
+		candidatePairs.reset();
+		intersectionTests.reset();
+		validEdges.reset();
+		nodesExpanded.reset();
+		queueOperations.reset();
+	}
+
+	/**
+	 * Returns a summary of the metrics, one stage or counter per line.
+	 * @return the summary
+	 */
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < STAGE_NAMES.length; i++) {
+			s.append(String.format("%-12s %10.3f ms in %d calls%n", STAGE_NAMES[i], getStageNanos(i) / 1e6, getStageCalls(i)));
+		}
+		s.append("candidate pairs     ").append(getCandidatePairs()).append('\n');
+		s.append("intersection tests  ").append(getIntersectionTests()).append('\n');
+		s.append("valid edges         ").append(getValidEdges()).append('\n');
+		s.append("nodes expanded      ").append(getNodesExpanded()).append('\n');
+		s.append("queue operations    ").append(getQueueOperations());
+		return s.toString();
+	}
+
+	/**
+	 * Holds the only reference to the recorder outside PlannerStageEvent, so that
+	 * the jdk.jfr module is only touched once it is known to be present.
+	 */
+	private static class Recorder {
+
+		// whether flight recording has been started in this process
+		static boolean isRunning() {
+			return jdk.jfr.FlightRecorder.isInitialized();
+		}
+
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,89 @@
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports how far the current planning stage has got, and lets another thread
+ * ask it to stop. A stage checks for cancellation between rows of vertex pairs,
+ * obstacles or batches of search steps, and stops by throwing a
+ * CancellationException, leaving the environment as it was before the stage.
+ * @author Andrew Goldin
+ */
+public class PlannerProgress {
+
+	private volatile boolean cancelled;
+	private volatile String stage = "";
+	private volatile long total;
+	private final AtomicLong done = new AtomicLong();
+
+	/**
+	 * Asks the running stage, and any stage started later, to stop.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Returns whether cancel has been called since the last reset.
+	 * @return true if planning should stop, false otherwise
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Clears the cancellation and the progress of the last stage, for reuse.
+	 */
+	public void reset() {
+		cancelled = false;
+		begin("", 0);
+	}
+
+	/**
+	 * Returns the name of the stage most recently started.
+	 * @return the stage name
+	 */
+	public String getStage() {
+		return stage;
+	}
+
+	/**
+	 * Returns how much of the current stage is done.
+	 * @return a fraction between 0 and 1, or -1 if the stage's length is not known
+	 */
+	public float getFraction() {
+		long t = total;
+		if (t <= 0) return -1.0f;
+		return Math.min(1.0f, (float) done.get() / t);
+	}
+
+	/**
+	 * Starts reporting a stage.
+	 * @param progress the progress to report to, or null for none
+	 * @param stage the name of the stage
+	 * @param total the number of units of work in the stage, or 0 if not known
+	 */
+	public static void begin(PlannerProgress progress, String stage, long total) {
+		if (progress != null) progress.begin(stage, total);
+	}
+
+	/**
+	 * Reports units of work done in the current stage, then stops the stage if it
+	 * has been cancelled. Safe to call from several threads at once.
+	 * @param progress the progress to report to, or null for none
+	 * @param amount the number of units done since the last call
+	 * @throws CancellationException if the stage has been cancelled
+	 */
+	public static void advance(PlannerProgress progress, long amount) {
+		if (progress == null) return;
+		progress.done.addAndGet(amount);
+		if (progress.cancelled) throw new CancellationException(progress.stage + " cancelled");
+	}
+
+	// sets the stage name and size, with nothing done yet
+	private void begin(String stage, long total) {
+		this.stage = stage;
+		this.total = total;
+		done.set(0);
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,59 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for one stage of planning. Only PlannerMetrics
+ * refers to this class, and only when the jdk.jfr module is present, so planning
+ * still runs on runtimes without it.
+ * @author Andrew Goldin
+ */
+@Name("RoboPath.PlannerStage")
+@Label("Planner Stage")
+@Category("RoboPath")
+@Description("A stage of path planning and the work done in it")
+public class PlannerStageEvent extends Event {
+
+	@Label("Stage")
+	String stage;
+
+	@Label("Candidate Pairs")
+	long candidatePairs;
+
+	@Label("Intersection Tests")
+	long intersectionTests;
+
+	@Label("Valid Edges")
+	long validEdges;
+
+	@Label("Nodes Expanded")
+	long nodesExpanded;
+
+	@Label("Queue Operations")
+	long queueOperations;
+
+	// begins an event, or returns null if the event is not being recorded
+	static Object start() {
+		PlannerStageEvent event = new PlannerStageEvent();
+		if (!event.isEnabled()) return null;
+		event.begin();
+		return event;
+	}
+
+	// fills in and commits an event from start
+	static void finish(Object e, String stage, long pairs, long tests, long edges, long nodes, long queueOps) {
+		PlannerStageEvent event = (PlannerStageEvent) e;
+		event.end();
+		if (!event.shouldCommit()) return;
+		event.stage = stage;
+		event.candidatePairs = pairs;
+		event.intersectionTests = tests;
+		event.validEdges = edges;
+		event.nodesExpanded = nodes;
+		event.queueOperations = queueOps;
+		event.commit();
+	}
+
+}
\ No newline at end of file
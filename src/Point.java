@@ -1,14 +1,10 @@
-import java.awt.geom.Point2D;
-
 /**
  * A 2D Point using floats.
  * @author Andrew Goldin
  */
-public class Point extends Point2D.Float implements Comparable<Point> {
+public class Point {
 	
-	private static final long serialVersionUID = 1L;
-	
-	private float angle, distance;
+	public final float x, y;
 	
 	/**
 	 * Constructs a new point.
@@ -16,9 +12,8 @@ public class Point extends Point2D.Float implements Comparable<Point> {
 	 * @param y the y coordinate
 	 */
 	public Point(float x, float y) {
-		super(x, y);
-		angle = 0.0f;
-		distance = 0.0f;
+		this.x = x;
+		this.y = y;
 	}
 	
 	/**
@@ -26,51 +21,8 @@ public class Point extends Point2D.Float implements Comparable<Point> {
 	 * @param other the Point to copy
 	 */
 	public Point(Point other) {
-		super(other.x, other.y);
-		angle = other.getAngle();
-		distance = other.getDistance();
-	}
-	
-	/**
-	 * Sets the Point's angle and distance relative to another
-	 * point (for sorting purposes and convex hull computation)
-	 * @param other the other Point
-	 */
-	public void setAngleAndDistance(Point other) {
-		angle = (float) Math.toDegrees(Math.atan2(this.y - other.y, this.x - other.x));
-		distance = (float) Math.sqrt((this.x - other.x) * (this.x - other.x) + (this.y - other.y) * (this.y - other.y));
-	}
-	
-	/**
-	 * Sets the angle of the point, relative to an arbitrary point.
-	 * @param a the angle, in degrees
-	 */
-	public void setAngle(float a) {
-		angle = a;
-	}
-	
-	/**
-	 * Sets the distance of the point, relative to an arbitrary point.
-	 * @param d the distance
-	 */
-	public void setDistance(float d) {
-		distance = d;
-	}
-	
-	/**
-	 * Returns the angle of the point.
-	 * @return the angle
-	 */
-	public float getAngle() {
-		return angle;
-	}
-	
-	/**
-	 * Returns the distance of the point.
-	 * @return the distance
-	 */
-	public float getDistance() {
-		return distance;
+		x = other.x;
+		y = other.y;
 	}
 	
 	/**
@@ -94,18 +46,33 @@ public class Point extends Point2D.Float implements Comparable<Point> {
 	}
 	
 	/**
-	 * Compares points by angle and distance.
-	 * @return positive if this angle is larger than other's angle, or the angles
-	 * are the same but this distance is larger than other's distance. Returns
-	 * negative if this angle is smaller than other's angle, or the angles are the
-	 * same but this distance is smaller than the other's distance. Zero if equal.
+	 * Determines if this point is at the same location as another.
+	 * @param obj the other object
+	 * @return true if obj is a Point with the same coordinates, false otherwise
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Point)) return false;
+		Point other = (Point) obj;
+		return x == other.x && y == other.y;
+	}
+	
+	/**
+	 * Returns a hash code consistent with equals; 0 and -0 hash alike since they are equal.
+	 * @return the hash code of the point's coordinates
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * Float.floatToIntBits(x + 0.0f) + Float.floatToIntBits(y + 0.0f);
+	}
+	
+	/**
+	 * Returns the coordinates of the point as a string.
+	 * @return the string "(x, y)"
 	 */
-	public int compareTo(Point other) {
-		if (this.angle > other.angle) return 1;
-		else if (this.angle < other.angle) return -1;
-		else if (this.distance > other.distance) return 1;
-		else if (this.distance < other.distance) return -1;
-		else return 0;
+	@Override
+	public String toString() {
+		return "(" + x + ", " + y + ")";
 	}
 	
 }
\ No newline at end of file
@@ -1,4 +1,3 @@
-import java.awt.*;
 import java.util.*;
 
 /**
@@ -8,10 +7,17 @@ import java.util.*;
 public class Poly {
 
 	public static final float ROBOT_DIAMETER = 0.35f;
+	
+	// how far inside its boundary a point must be for the polygon to contain it,
+	// so that points on an edge are not counted despite floating point error
+	private static final float CONTAINS_EPSILON = 0.001f;
 
-	private Point[] points;
-	private Edge[] edges, goalEdges;
+	private float[] xpoints, ypoints;
+	private volatile Point[] points;
+	private volatile Edge[] edges;
 	private boolean isGoal;
+	private float minX, minY, maxX, maxY;
+	private int winding;
 
 	/**
 	 * Constructs a new polygon object.
@@ -21,23 +27,20 @@ public class Poly {
 	 * @param isGoal whether or not the polygon is a goal object
 	 */
 	public Poly(float[] xpoints, float[] ypoints, int npoints, boolean isGoal) {
-		points = new Point[npoints];
-		edges = new Edge[npoints];
-		goalEdges = new Edge[npoints * npoints];
-		for (int i = 0; i < npoints; i++) {
-			points[i] = new Point(xpoints[i], ypoints[i]);
-			if (i > 0) edges[i] = new Edge(points[i-1], points[i]);
-		}
-		edges[0] = new Edge(points[npoints - 1], points[0]);
+		this.xpoints = Arrays.copyOf(xpoints, npoints);
+		this.ypoints = Arrays.copyOf(ypoints, npoints);
 		this.isGoal = isGoal;
-		if (isGoal) {
-			for (int i = 0; i < npoints; i++) {
-				for (int j = 0; j < npoints; j++) {
-					goalEdges[npoints * i + j] = new Edge(points[i], points[j]);
-				}
-			}
-		}
 		
+		// bounding box, cached for early rejection
+		minX = maxX = xpoints[0];
+		minY = maxY = ypoints[0];
+		for (int i = 1; i < npoints; i++) {
+			minX = Math.min(minX, xpoints[i]);
+			minY = Math.min(minY, ypoints[i]);
+			maxX = Math.max(maxX, xpoints[i]);
+			maxY = Math.max(maxY, ypoints[i]);
+		}
+		winding = signedArea() >= 0.0 ? 1 : -1;
 	}
 	
 	/**
@@ -45,10 +48,14 @@ public class Poly {
 	 * @param p the Poly to copy
 	 */
 	public Poly(Poly p) {
-		this.points = p.points.clone();
-		this.edges = p.edges.clone();
-		this.goalEdges = p.goalEdges.clone();
+		this.xpoints = p.xpoints.clone();
+		this.ypoints = p.ypoints.clone();
 		this.isGoal = p.isGoal;
+		this.minX = p.minX;
+		this.minY = p.minY;
+		this.maxX = p.maxX;
+		this.maxY = p.maxY;
+		this.winding = p.winding;
 	}
 
 	/**
@@ -56,15 +63,62 @@ public class Poly {
 	 * @return the number of points
 	 */
 	public int numPoints() {
-		return points.length;
+		return xpoints.length;
+	}
+
+	/**
+	 * Returns the x coordinates of the polygon's points. The array is the
+	 * polygon's own storage and must not be modified.
+	 * @return the x coordinates in the order provided to the constructor
+	 */
+	public float[] getXPoints() {
+		return xpoints;
 	}
 
 	/**
-	 * Returns the list of points in the polygon.
+	 * Returns the y coordinates of the polygon's points. The array is the
+	 * polygon's own storage and must not be modified.
+	 * @return the y coordinates in the order provided to the constructor
+	 */
+	public float[] getYPoints() {
+		return ypoints;
+	}
+
+	/**
+	 * Returns the list of points in the polygon, created on first use.
 	 * @return the list of points in the order provided to the constructor
 	 */
 	public Point[] getPoints() {
-		return points;
+		Point[] result = points;
+		if (result == null) {
+			result = new Point[xpoints.length];
+			for (int i = 0; i < result.length; i++) result[i] = new Point(xpoints[i], ypoints[i]);
+			points = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the edges of the polygon, created on first use.
+	 * @return the list of edges, each joining a point to the one before it
+	 */
+	public Edge[] getEdges() {
+		Edge[] result = edges;
+		if (result == null) {
+			Point[] pts = getPoints();
+			result = new Edge[pts.length];
+			for (int i = 0; i < pts.length; i++) result[i] = new Edge(pts[i == 0 ? pts.length - 1 : i - 1], pts[i]);
+			edges = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns whether the polygon is a goal object, drawn with every pair of points joined.
+	 * @return true if the polygon is a goal object, false otherwise
+	 */
+	public boolean isGoal() {
+		return isGoal;
 	}
 
 	/**
@@ -72,10 +126,6 @@ public class Poly {
 	 * @return the minimum x value
 	 */
 	public float getMinX() {
-		float minX = points[0].x;
-		for (int i = 1; i < points.length; i++) {
-			if (points[i].x < minX) minX = points[i].x;
-		}
 		return minX;
 	}
 
@@ -84,10 +134,6 @@ public class Poly {
 	 * @return the minimum y value
 	 */
 	public float getMinY() {
-		float minY = points[0].y;
-		for (int i = 1; i < points.length; i++) {
-			if (points[i].y < minY) minY = points[i].y;
-		}
 		return minY;
 	}
 
@@ -96,10 +142,6 @@ public class Poly {
 	 * @return the maximum x value
 	 */
 	public float getMaxX() {
-		float maxX = points[0].x;
-		for (int i = 1; i < points.length; i++) {
-			if (points[i].x > maxX) maxX = points[i].x;
-		}
 		return maxX;
 	}
 
@@ -108,10 +150,6 @@ public class Poly {
 	 * @return the maximum y value
 	 */
 	public float getMaxY() {
-		float maxY = points[0].y;
-		for (int i = 1; i < points.length; i++) {
-			if (points[i].y > maxY) maxY = points[i].y;
-		}
 		return maxY;
 	}
 	
@@ -133,84 +171,126 @@ public class Poly {
 
 
 	/**
-	 * Uses a Graham scan to grow the polygon by the size of a provided Polygon
-	 * @param r the Poly to reference for growth
-	 * @return the grown polygon object
+	 * Returns a copy of the polygon moved by a given offset.
+	 * @param dx the distance to move along the x axis
+	 * @param dy the distance to move along the y axis
+	 * @return a new Poly with every point offset by (dx, dy)
 	 */
-	public Poly grow(Poly r) {
-		
-		Poly robot = r.reflect(r.getCenterX(), r.getCenterY());
-		float rad = Math.abs(robot.getCenterX() - robot.getMinX());
-		
-		ArrayList<Point> grownPoints = new ArrayList<Point>();
-		for (int i = 0; i < points.length; i++) {
-			grownPoints.add(new Point(points[i].x - rad, points[i].y + rad));
-			grownPoints.add(new Point(points[i].x + rad, points[i].y + rad));
-			grownPoints.add(new Point(points[i].x + rad, points[i].y - rad));
-			grownPoints.add(new Point(points[i].x - rad, points[i].y - rad));
+	public Poly translate(float dx, float dy) {
+		float[] newx = new float[xpoints.length];
+		float[] newy = new float[xpoints.length];
+		for (int i = 0; i < xpoints.length; i++) {
+			newx[i] = xpoints[i] + dx;
+			newy[i] = ypoints[i] + dy;
 		}
+		return new Poly(newx, newy, xpoints.length, isGoal);
+	}
 
-		//find p0 (highest x with the lowest y)
-		Point p0 = grownPoints.get(0);
-		for(int i = 0; i < grownPoints.size(); i++) {
-			// update p0 if current y value is lower, or equal with larger x value
-			if(grownPoints.get(i).y < p0.y || (grownPoints.get(i).y == p0.y && grownPoints.get(i).x > p0.x)) {
-				p0 = grownPoints.get(i);
-			}
+	/**
+	 * Grows the polygon by a robot footprint: the result is the Minkowski sum of the
+	 * polygon and the footprint reflected through its center, i.e. every position of
+	 * the robot's center at which the robot would touch the polygon. Both shapes are
+	 * treated as convex (a non-convex one is replaced by its convex hull) and their
+	 * edges are merged in order of direction, in time linear in their sizes.
+	 * @param r the Poly to reference for growth, e.g. the robot's footprint
+	 * @return the grown polygon object, counter-clockwise in the sense of the cross product
+	 */
+	public Poly grow(Poly r) {
+		Poly footprint = r.reflect();
+		return minkowskiSum(isStrictlyConvex() ? this : hull(), footprint.isStrictlyConvex() ? footprint : footprint.hull());
+	}
+	
+	/**
+	 * Returns the polygon reflected through its center, as offsets from that center.
+	 * This is the shape grow adds to another polygon when growing it by this one.
+	 * @return the reflected polygon, centered on the origin
+	 */
+	public Poly reflect() {
+		float cx = getCenterX(), cy = getCenterY();
+		float[] fx = new float[xpoints.length];
+		float[] fy = new float[ypoints.length];
+		for (int i = 0; i < fx.length; i++) {
+			fx[i] = cx - xpoints[i];
+			fy[i] = cy - ypoints[i];
 		}
-		p0.setAngle(0.0f);
-		p0.setDistance(0.0f);
+		return new Poly(fx, fy, fx.length, false);
+	}
 
-		//get all angles in relation to p0
-		for (int i = 0; i < grownPoints.size(); i++) {
-			grownPoints.get(i).setAngleAndDistance(p0);
-		}
-		Collections.sort(grownPoints);
-		
-		LinkedList<Point> stack = new LinkedList<Point>();
-		stack.push(grownPoints.get(grownPoints.size() - 1));
-		stack.push(grownPoints.get(0));
-		int i = 1;
-		while(i < grownPoints.size()) {
-			// check for clockwise turns since x-axis is flipped
-			if(isClockWise(stack.get(1), stack.get(0), grownPoints.get(i))) {
-				stack.push(grownPoints.get(i)); 
-				i++;
+	// sums two strictly convex polygons by walking both, counter-clockwise from their
+	// lowest points, and always stepping along the edge that turns least
+	private static Poly minkowskiSum(Poly a, Poly b) {
+		int n = a.xpoints.length, m = b.xpoints.length;
+		int da = a.signedArea() >= 0.0 ? 1 : -1, db = b.signedArea() >= 0.0 ? 1 : -1;
+		int sa = a.lowestPoint(), sb = b.lowestPoint();
+		float[] xs = new float[n + m];
+		float[] ys = new float[n + m];
+		int count = 0, i = 0, j = 0;
+		while (i < n || j < m) {
+			int ai = Math.floorMod(sa + da * i, n), bj = Math.floorMod(sb + db * j, m);
+			xs[count] = a.xpoints[ai] + b.xpoints[bj];
+			ys[count] = a.ypoints[ai] + b.ypoints[bj];
+			count++;
+			if (i == n) {
+				j++;
+				continue;
 			}
-			else {
-				stack.pop();
+			if (j == m) {
+				i++;
+				continue;
 			}
+			int an = Math.floorMod(ai + da, n), bn = Math.floorMod(bj + db, m);
+			double cross = ((double) a.xpoints[an] - a.xpoints[ai]) * ((double) b.ypoints[bn] - b.ypoints[bj])
+					- ((double) a.ypoints[an] - a.ypoints[ai]) * ((double) b.xpoints[bn] - b.xpoints[bj]);
+			if (cross >= 0.0) i++;
+			if (cross <= 0.0) j++;
 		}
+		return new Poly(xs, ys, count, false);
+	}
 
-		// public Poly(float[] xpoints, float[] ypoints, int npoints, boolean isGoal)
-		float[] xPoints = new float[stack.size()];
-		float[] yPoints = new float[stack.size()];
-		for(int j = 0; j < xPoints.length; j++) {
-			xPoints[j] = stack.get(j).x;
-			yPoints[j] = stack.get(j).y;
+	// twice the area enclosed, positive when the points turn left in the sense of the cross product
+	private double signedArea() {
+		double area = 0.0;
+		for (int i = 0, j = xpoints.length - 1; i < xpoints.length; j = i++) {
+			area += (double) xpoints[j] * ypoints[i] - (double) xpoints[i] * ypoints[j];
 		}
-
-		return new Poly(xPoints, yPoints, xPoints.length, false);
+		return area;
 	}
 
-	// uses 2D cross product to test if node v is left of the line formed by base and u, base u v
-	private boolean isClockWise(Point p1, Point p2, Point p3) {
-		double ux = -(p2.x - p1.x);
-		double uy = p2.y - p1.y;
-		double vx = -(p3.x - p1.x);
-		double vy = p3.y - p1.y;
-		return (ux * vy - uy * vx < 0);
+	// index of the point with the lowest y, taking the lowest x among ties
+	private int lowestPoint() {
+		int low = 0;
+		for (int i = 1; i < xpoints.length; i++) {
+			if (ypoints[i] < ypoints[low] || (ypoints[i] == ypoints[low] && xpoints[i] < xpoints[low])) low = i;
+		}
+		return low;
 	}
 
-	// private method for growth
-	private Poly reflect(float ox, float oy) {
-		float[] newx = new float[points.length];
-		float[] newy = new float[points.length];
-		for (int i = 0; i < points.length; i++) {
-			newx[i] = 2.0f * ox - points[i].x;
-			newy[i] = 2.0f * oy - points[i].y;
+	// whether every corner turns the same way, with no straight or repeated points,
+	// and the boundary winds around only once
+	private boolean isStrictlyConvex() {
+		int n = xpoints.length;
+		if (n < 3) return false;
+		int turn = 0, xFlips = 0;
+		float lastDx = 0.0f;
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n, k = (i + 2) % n;
+			double cross = ((double) xpoints[j] - xpoints[i]) * ((double) ypoints[k] - ypoints[j])
+					- ((double) ypoints[j] - ypoints[i]) * ((double) xpoints[k] - xpoints[j]);
+			int sign = cross > 0.0 ? 1 : (cross < 0.0 ? -1 : 0);
+			if (sign == 0 || (turn != 0 && sign != turn)) return false;
+			turn = sign;
+			float dx = xpoints[j] - xpoints[i];
+			if (dx != 0.0f) {
+				if (lastDx != 0.0f && (dx > 0.0f) != (lastDx > 0.0f)) xFlips++;
+				lastDx = dx;
+			}
 		}
-		return new Poly(newx, newy, points.length, isGoal);
+		return xFlips <= 2;
+	}
+
+	// the convex hull of the polygon's points
+	private Poly hull() {
+		return ConvexHull.of(xpoints, ypoints, xpoints.length);
 	}
 	
 	/**
@@ -219,30 +299,56 @@ public class Poly {
 	 * @return true if the Poly contains the point, false otherwise
 	 */
 	public boolean containsPoint(Point p) {
+		return containsPoint(p.x, p.y);
+	}
+	
+	/**
+	 * Determines whether the point (x, y) is inside the polygon, which must be convex.
+	 * The point is located in the fan of triangles from the first point by binary
+	 * search, in time logarithmic in the number of points. Points within a small
+	 * tolerance of the boundary are not counted as inside.
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @return true if the Poly contains the point, false otherwise
+	 */
+	public boolean containsPoint(float x, float y) {
 		
-		// this SHOULD work for any arbitrary convex poly, but doesn't :(
-//		Poly test = new Poly(this);
-//		test.points[0].setAngle(0.0f);
-//		test.points[0].setDistance(0.0f);
-//		for (int i = 0; i < test.points.length; i++) {
-//			test.points[i].setAngleAndDistance(test.points[0]);
-//		}
-//		Arrays.sort(test.points);
-//		for (int i = 0; i < test.points.length - 1; i++) {
-//			if (!isClockWise(test.points[i], test.points[i+1], p)) {
-//				return false;
-//			}
-//		}
-//		if (!isClockWise(test.points[test.points.length - 1], test.points[0], p)) {
-//			return false;
-//		}
-//		return true;
+		// a point within the tolerance of the bounding box is within it of the boundary
+		if (x < minX + CONTAINS_EPSILON || x > maxX - CONTAINS_EPSILON) return false;
+		if (y < minY + CONTAINS_EPSILON || y > maxY - CONTAINS_EPSILON) return false;
+		int n = xpoints.length;
+		if (n < 3) return false;
+		
+		// find the triangle of the fan from point 0 that the point falls in: the last
+		// point k such that the point is left of the diagonal from point 0 to point k
+		if (turn(0, 1, x, y) < 0.0 || turn(0, n - 1, x, y) > 0.0) return false;
+		int lo = 1, hi = n - 1;
+		while (hi - lo > 1) {
+			int mid = (lo + hi) >>> 1;
+			if (turn(0, mid, x, y) >= 0.0) lo = mid;
+			else hi = mid;
+		}
 		
-		// shortcut since we know obstacles are rectangular
-		float eps = 0.001f; // due to floating point error
-		if (p.x < getMinX() + eps || p.x > getMaxX() - eps) return false;
-		if (p.y < getMinY() + eps || p.y > getMaxY() - eps) return false;
-		return true;
+		// inside the triangle, the point is nearest the outer edge, the edges beside it
+		// or, close to point 0, the two edges there
+		return isInside(lo, x, y) && isInside(lo - 1, x, y) && isInside((lo + 1) % n, x, y)
+				&& isInside(0, x, y) && isInside(n - 1, x, y);
+	}
+	
+	// positive if (x, y) is left of the line from point i to point j, walking the polygon
+	// counter-clockwise in the sense of the cross product
+	private double turn(int i, int j, float x, float y) {
+		double cross = ((double) xpoints[j] - xpoints[i]) * ((double) y - ypoints[i])
+				- ((double) ypoints[j] - ypoints[i]) * ((double) x - xpoints[i]);
+		return winding * cross;
+	}
+	
+	// whether (x, y) is further than the tolerance inside the edge from point i to the next
+	private boolean isInside(int i, float x, float y) {
+		int j = (i + 1) % xpoints.length;
+		double dx = (double) xpoints[j] - xpoints[i], dy = (double) ypoints[j] - ypoints[i];
+		double length = Math.sqrt(dx * dx + dy * dy);
+		return length == 0.0 || turn(i, j, x, y) > CONTAINS_EPSILON * length;
 	}
 	
 	/**
@@ -252,33 +358,34 @@ public class Poly {
 	 * the Poly or contains one of the points in the Poly, false otherwise
 	 */
 	public boolean intersects(Edge e) {
-		for (int i = 0; i < edges.length; i++) {
-			if (e.intersects(edges[i])) return true;
-		}
-		for (int i = 0; i < points.length; i++) {
-			if (e.containsPoint(points[i])) return true;
-		}
-		return false;
+		return intersects(e.p.x, e.p.y, e.q.x, e.q.y);
 	}
-
+	
 	/**
-	 * Draws the polygon.
-	 * @param g the graphics context
-	 * @param scale the scale factor
-	 * @param offsetX the pixel x offset
-	 * @param offsetY the pixel y offset
+	 * Determines whether the segment from (x1, y1) to (x2, y2) intersects the Poly.
+	 * @return true if the segment intersects one of the edges of the Poly or
+	 * contains one of the points in the Poly, false otherwise
 	 */
-	public void draw(Graphics g, float scale, float offsetX, float offsetY) {
-		if (isGoal) {
-			for (int i = 0; i < goalEdges.length; i++) {
-				goalEdges[i].draw(g, scale, offsetX, offsetY);
+	public boolean intersects(float x1, float y1, float x2, float y2) {
+		// reject edges whose bounds miss the polygon's; Edge.containsPoint tolerates
+		// points up to EPSILON / length off the edge, so widen by that much
+		float dx = x2 - x1, dy = y2 - y1;
+		float length = (float) Math.sqrt(dx * dx + dy * dy);
+		if (length > 0.0f) {
+			float margin = 2.0f * Edge.EPSILON / length;
+			if (Math.max(x1, x2) + margin < minX || Math.min(x1, x2) - margin > maxX
+					|| Math.max(y1, y2) + margin < minY || Math.min(y1, y2) - margin > maxY) {
+				return false;
 			}
 		}
-		else {
-			for (int i = 0; i < edges.length; i++) {
-				edges[i].draw(g, scale, offsetX, offsetY);
-			}
+		int n = xpoints.length;
+		for (int i = 0, j = n - 1; i < n; j = i++) {
+			if (Edge.crosses(x1, y1, x2, y2, xpoints[j], ypoints[j], xpoints[i], ypoints[i])) return true;
 		}
+		for (int i = 0; i < n; i++) {
+			if (Edge.containsPoint(x1, y1, x2, y2, xpoints[i], ypoints[i])) return true;
+		}
+		return false;
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,503 @@
+import java.util.Arrays;
+
+/**
+ * Keeps a shortest path from a moving robot to a fixed goal up to date as new
+ * obstacles are discovered, without rebuilding the visibility graph or searching
+ * it again from scratch. This is D* Lite over a road map's graph: the search runs
+ * backward from the goal and keeps its distances between calls, so a change only
+ * reopens the vertices whose distance to the goal it actually alters. A new
+ * obstacle removes the edges it blocks and adds its own vertices to the graph; a
+ * move of the robot replaces the start vertex and shifts the heuristic by the
+ * distance moved.
+ * @author Andrew Goldin
+ */
+public class Replanner {
+
+	// the cost of an edge that no longer exists, and the distance of an unreached vertex
+	private static final float INFINITY = Float.MAX_VALUE;
+
+	private RoadMap roadMap;
+	private ObstacleGrid grid;
+	private int[] offsets, targets;
+	private float[] weights;
+	private boolean[] blocked;
+	private int numVertices;
+
+	// vertices added after the road map was built, including the start and goal,
+	// are numbered after the graph's; links[v] lists the added edges at vertex v
+	private int numNodes;
+	private Point[] points;
+	private int[][] links;
+	private int[] linkCount;
+	private boolean[] removed;
+	private Poly[] added;
+	private int numAdded;
+
+	// search state, kept between calls
+	private float[] g, rhs;
+	private KeyQueue queue;
+	private float km;
+	private int start, goal;
+	private Point last;
+	private int[] visible, stamp;
+	private int stampCount;
+	private int nodesExpanded, queueOperations;
+	private PlannerMetrics metrics;
+
+	/**
+	 * Creates a replanner between two points on a road map's graph. The road map
+	 * is copied, so it may go on answering other queries.
+	 * @param roadMap the road map over the (grown) obstacles known at the start
+	 * @param start the robot's position
+	 * @param goal the goal point
+	 */
+	public Replanner(RoadMap roadMap, Point start, Point goal) {
+		this.roadMap = roadMap.copy();
+		VisibilityGraph graph = roadMap.getGraph();
+		grid = new ObstacleGrid(roadMap.getBoundary(), roadMap.getObstacles());
+		offsets = graph.getOffsets();
+		targets = graph.getTargets();
+		weights = graph.getWeights();
+		blocked = new boolean[targets.length];
+		numVertices = graph.numVertices();
+
+		int capacity = numVertices + 16;
+		points = new Point[capacity];
+		for (int v = 0; v < numVertices; v++) points[v] = graph.getVertex(v);
+		links = new int[capacity][];
+		linkCount = new int[capacity];
+		removed = new boolean[capacity];
+		g = new float[capacity];
+		rhs = new float[capacity];
+		Arrays.fill(g, INFINITY);
+		Arrays.fill(rhs, INFINITY);
+		queue = new KeyQueue(capacity);
+		added = new Poly[4];
+		int obstacleVertices = 0;
+		for (Poly p : roadMap.getObstacles()) obstacleVertices += p.numPoints();
+		visible = new int[obstacleVertices + 2];
+		stamp = new int[capacity];
+		numNodes = numVertices;
+
+		// the goal has distance zero to itself and seeds the backward search
+		last = start;
+		this.goal = addNode(goal);
+		this.start = addNode(start);
+		rhs[this.goal] = 0.0f;
+		updateVertex(this.goal);
+		recompute(this.start);
+	}
+
+	/**
+	 * Returns the current shortest path from the robot to the goal, repairing the
+	 * search after any changes since the last call.
+	 * @return an ordered list of Points from the robot's position to the goal, or null if there is none
+	 */
+	public Point[] getPath() {
+		long startNanos = System.nanoTime();
+		Object event = PlannerMetrics.beginStage();
+		computeShortestPath();
+		PlannerMetrics.endStage(metrics, event, PlannerMetrics.SEARCH, startNanos, 0, 0, 0, nodesExpanded, queueOperations);
+		if (g[start] == INFINITY) return null;
+
+		// each vertex's best next step is the neighbor minimizing cost plus distance to go
+		Point[] path = new Point[numNodes];
+		int length = 0;
+		for (int v = start; ; ) {
+			path[length++] = points[v];
+			if (v == goal) break;
+			// a walk through every vertex without reaching the goal has gone round a cycle
+			if (length == numNodes) return null;
+			int next = -1;
+			float best = INFINITY;
+			if (v < numVertices) {
+				for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+					if (!blocked[k] && g[targets[k]] != INFINITY && weights[k] + g[targets[k]] < best) {
+						best = weights[k] + g[targets[k]];
+						next = targets[k];
+					}
+				}
+			}
+			for (int i = 0; i < linkCount[v]; i++) {
+				int w = links[v][i];
+				float cost = Point.computeDistance(points[v], points[w]);
+				if (g[w] != INFINITY && cost + g[w] < best) {
+					best = cost + g[w];
+					next = w;
+				}
+			}
+			if (next < 0) return null;
+			v = next;
+		}
+		return Arrays.copyOf(path, length);
+	}
+
+	/**
+	 * Moves the robot, which replaces the start vertex with one at the new position.
+	 * @param position the robot's new position
+	 */
+	public void moveTo(Point position) {
+		km += Point.computeDistance(last, position);
+		last = position;
+		int old = start;
+		int[] neighbors = detach(old);
+		start = addNode(position);
+		recompute(start);
+		for (int i = 0; i < neighbors.length; i++) recompute(neighbors[i]);
+	}
+
+	/**
+	 * Adds an obstacle discovered since the road map was built. The obstacle must
+	 * already be grown by the robot, as the road map's obstacles were, and convex.
+	 * Edges it blocks are removed, and its vertices are added with their edges.
+	 * @param obstacle the grown obstacle
+	 */
+	public void addObstacle(Poly obstacle) {
+		if (numAdded == added.length) added = Arrays.copyOf(added, 2 * numAdded);
+		added[numAdded++] = obstacle;
+
+		// the same test a rebuilt visibility graph would make, so the two agree
+		for (int u = 0; u < numVertices; u++) {
+			Point p = points[u];
+			for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+				int v = targets[k];
+				if (v < u || blocked[k]) continue;
+				if (!Environment.blocks(obstacle, p, points[v])) continue;
+				blocked[k] = true;
+				for (int j = offsets[v]; j < offsets[v + 1]; j++) {
+					if (targets[j] == u) blocked[j] = true;
+				}
+				recompute(u);
+				recompute(v);
+			}
+		}
+		for (int u = numVertices; u < numNodes; u++) {
+			for (int i = 0; i < linkCount[u]; i++) {
+				int v = links[u][i];
+				if (v < u && v >= numVertices) continue;
+				if (Environment.blocks(obstacle, points[u], points[v])) {
+					unlink(u, v);
+					i--;
+					recompute(u);
+					recompute(v);
+				}
+			}
+		}
+		float[] xs = obstacle.getXPoints(), ys = obstacle.getYPoints();
+		for (int i = 0; i < xs.length; i++) {
+			Point p = new Point(xs[i], ys[i]);
+			if (!isInsideObstacle(p)) recompute(addNode(p));
+		}
+	}
+
+	/**
+	 * Attaches metrics that accumulate the time and work of each repair.
+	 * @param metrics the metrics to add to, or null to stop collecting
+	 */
+	public void setMetrics(PlannerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Returns the number of vertices expanded by the last call to getPath.
+	 * @return the number of expanded vertices
+	 */
+	public int getNodesExpanded() {
+		return nodesExpanded;
+	}
+
+	// expands vertices in key order until the start's distance is settled; the
+	// distances are to the goal, and keys add the straight-line distance to the start
+	private void computeShortestPath() {
+		nodesExpanded = 0;
+		queueOperations = 0;
+		while (!queue.isEmpty() && (queue.before(queue.peekKey(), queue.peekTie(), key(start), Math.min(g[start], rhs[start]))
+				|| rhs[start] != g[start])) {
+			int u = queue.peek();
+			float newKey = key(u), newTie = Math.min(g[u], rhs[u]);
+			queueOperations++;
+			if (queue.before(queue.peekKey(), queue.peekTie(), newKey, newTie)) {
+				queue.update(u, newKey, newTie);
+				continue;
+			}
+			nodesExpanded++;
+			queue.remove(u);
+			if (g[u] > rhs[u]) {
+				g[u] = rhs[u];
+				if (u < numVertices) {
+					for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+						if (!blocked[k]) lower(targets[k], weights[k] + g[u]);
+					}
+				}
+				for (int i = 0; i < linkCount[u]; i++) {
+					int s = links[u][i];
+					lower(s, Point.computeDistance(points[s], points[u]) + g[u]);
+				}
+			}
+			else {
+				float oldG = g[u];
+				g[u] = INFINITY;
+				if (u < numVertices) {
+					for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+						if (!blocked[k] && rhs[targets[k]] == weights[k] + oldG) recompute(targets[k]);
+					}
+				}
+				for (int i = 0; i < linkCount[u]; i++) {
+					int s = links[u][i];
+					if (rhs[s] == Point.computeDistance(points[s], points[u]) + oldG) recompute(s);
+				}
+				recompute(u);
+			}
+		}
+	}
+
+	// lets s reach the goal for the given cost if that is cheaper than it can now
+	private void lower(int s, float cost) {
+		if (s != goal && cost < rhs[s]) {
+			rhs[s] = cost;
+			updateVertex(s);
+		}
+	}
+
+	// sets s's one-step lookahead to the best of its neighbors' distances plus the edge
+	private void recompute(int s) {
+		if (s == goal || removed[s]) return;
+		float best = INFINITY;
+		if (s < numVertices) {
+			for (int k = offsets[s]; k < offsets[s + 1]; k++) {
+				if (!blocked[k] && g[targets[k]] != INFINITY) best = Math.min(best, weights[k] + g[targets[k]]);
+			}
+		}
+		for (int i = 0; i < linkCount[s]; i++) {
+			int w = links[s][i];
+			if (g[w] != INFINITY) best = Math.min(best, Point.computeDistance(points[s], points[w]) + g[w]);
+		}
+		rhs[s] = best;
+		updateVertex(s);
+	}
+
+	// queues s if its distance and lookahead disagree, and unqueues it if they agree
+	private void updateVertex(int s) {
+		if (g[s] != rhs[s]) queue.update(s, key(s), Math.min(g[s], rhs[s]));
+		else if (queue.contains(s)) queue.remove(s);
+		queueOperations++;
+	}
+
+	// the primary key of s; the secondary key is min(g, rhs) itself
+	private float key(int s) {
+		float d = Math.min(g[s], rhs[s]);
+		if (d == INFINITY) return INFINITY;
+		return d + Point.computeDistance(points[s], points[start]) + km;
+	}
+
+	// adds a vertex and links it to every vertex it can see, leaving the caller to
+	// recompute its lookahead once the start is known
+	private int addNode(Point p) {
+		if (numNodes == points.length) grow(2 * numNodes);
+		int id = numNodes++;
+		points[id] = p;
+		linkCount[id] = 0;
+
+		// the road map's sweep finds the graph vertices in view of the original
+		// obstacles; the added ones are checked separately
+		int count = roadMap.findVisible(p, visible);
+		stampCount++;
+		for (int k = 0; k < count; k++) {
+			int v = visible[k];
+			if (stamp[v] == stampCount) continue;
+			stamp[v] = stampCount;
+			if (!isBlockedByAdded(p, points[v])) link(id, v);
+		}
+		for (int v = numVertices; v < id; v++) {
+			if (removed[v]) continue;
+			if (grid.isVisible(p.x, p.y, points[v].x, points[v].y, null) && !isBlockedByAdded(p, points[v])) link(id, v);
+		}
+		return id;
+	}
+
+	// removes a vertex and its edges, returning the vertices it was linked to
+	private int[] detach(int s) {
+		int[] neighbors = Arrays.copyOf(links[s], linkCount[s]);
+		while (linkCount[s] > 0) unlink(s, links[s][0]);
+		removed[s] = true;
+		g[s] = INFINITY;
+		rhs[s] = INFINITY;
+		if (queue.contains(s)) queue.remove(s);
+		return neighbors;
+	}
+
+	// adds an edge between u and v to both of their link lists
+	private void link(int u, int v) {
+		append(u, v);
+		append(v, u);
+	}
+
+	// adds v to u's link list
+	private void append(int u, int v) {
+		if (links[u] == null) links[u] = new int[4];
+		else if (linkCount[u] == links[u].length) links[u] = Arrays.copyOf(links[u], 2 * linkCount[u]);
+		links[u][linkCount[u]++] = v;
+	}
+
+	// removes the edge between u and v from both of their link lists
+	private void unlink(int u, int v) {
+		remove(u, v);
+		remove(v, u);
+	}
+
+	// removes v from u's link list
+	private void remove(int u, int v) {
+		for (int i = 0; i < linkCount[u]; i++) {
+			if (links[u][i] == v) {
+				links[u][i] = links[u][--linkCount[u]];
+				return;
+			}
+		}
+	}
+
+	// whether any added obstacle blocks the segment from p to q
+	private boolean isBlockedByAdded(Point p, Point q) {
+		for (int i = 0; i < numAdded; i++) {
+			if (Environment.blocks(added[i], p, q)) return true;
+		}
+		return false;
+	}
+
+	// whether a point is inside an original or added obstacle
+	private boolean isInsideObstacle(Point p) {
+		if (grid.anyContains(p)) return true;
+		for (int i = 0; i < numAdded; i++) {
+			if (added[i].containsPoint(p)) return true;
+		}
+		return false;
+	}
+
+	// enlarges the per-vertex arrays
+	private void grow(int capacity) {
+		int old = points.length;
+		points = Arrays.copyOf(points, capacity);
+		links = Arrays.copyOf(links, capacity);
+		linkCount = Arrays.copyOf(linkCount, capacity);
+		removed = Arrays.copyOf(removed, capacity);
+		stamp = Arrays.copyOf(stamp, capacity);
+		g = Arrays.copyOf(g, capacity);
+		rhs = Arrays.copyOf(rhs, capacity);
+		Arrays.fill(g, old, capacity, INFINITY);
+		Arrays.fill(rhs, old, capacity, INFINITY);
+		queue.grow(capacity);
+	}
+
+	/**
+	 * A binary min-heap over vertex ids, ordered by a primary key and then a
+	 * secondary key, whose entries can be moved either way or removed.
+	 */
+	private static class KeyQueue {
+
+		private int[] heap, pos;
+		private float[] keys, ties;
+		private int size;
+
+		KeyQueue(int capacity) {
+			heap = new int[capacity];
+			pos = new int[capacity];
+			keys = new float[capacity];
+			ties = new float[capacity];
+			Arrays.fill(pos, -1);
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		boolean contains(int id) {
+			return pos[id] >= 0;
+		}
+
+		int peek() {
+			return heap[0];
+		}
+
+		float peekKey() {
+			return keys[heap[0]];
+		}
+
+		float peekTie() {
+			return ties[heap[0]];
+		}
+
+		// whether key (k1, k2) orders before key (l1, l2)
+		boolean before(float k1, float k2, float l1, float l2) {
+			return k1 < l1 || (k1 == l1 && k2 < l2);
+		}
+
+		// inserts id, or moves it to its new key if present
+		void update(int id, float key, float tie) {
+			if (pos[id] < 0) {
+				heap[size] = id;
+				pos[id] = size++;
+			}
+			keys[id] = key;
+			ties[id] = tie;
+			siftDown(siftUp(pos[id]));
+		}
+
+		void remove(int id) {
+			int i = pos[id];
+			pos[id] = -1;
+			size--;
+			if (i == size) return;
+			heap[i] = heap[size];
+			pos[heap[i]] = i;
+			siftDown(siftUp(i));
+		}
+
+		void grow(int capacity) {
+			int old = pos.length;
+			heap = Arrays.copyOf(heap, capacity);
+			pos = Arrays.copyOf(pos, capacity);
+			keys = Arrays.copyOf(keys, capacity);
+			ties = Arrays.copyOf(ties, capacity);
+			Arrays.fill(pos, old, capacity, -1);
+		}
+
+		// whether the entry of id a orders before that of id b
+		private boolean less(int a, int b) {
+			return before(keys[a], ties[a], keys[b], ties[b]);
+		}
+
+		// moves the entry at index i up, returning where it ends
+		private int siftUp(int i) {
+			int id = heap[i];
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				int p = heap[parent];
+				if (!less(id, p)) break;
+				heap[i] = p;
+				pos[p] = i;
+				i = parent;
+			}
+			heap[i] = id;
+			pos[id] = i;
+			return i;
+		}
+
+		// moves the entry at index i down
+		private void siftDown(int i) {
+			int id = heap[i];
+			int half = size >>> 1;
+			while (i < half) {
+				int child = 2 * i + 1;
+				if (child + 1 < size && less(heap[child + 1], heap[child])) child++;
+				int c = heap[child];
+				if (!less(c, id)) break;
+				heap[i] = c;
+				pos[c] = i;
+				i = child;
+			}
+			heap[i] = id;
+			pos[id] = i;
+		}
+
+	}
+
+}
\ No newline at end of file
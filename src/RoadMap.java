@@ -0,0 +1,298 @@
+import java.util.HashMap;
+
+/**
+ * A visibility graph between the vertices of a fixed set of obstacles, built once
+ * and reused for shortest path queries between any start and goal. Each query
+ * only sweeps around its own two points to connect them to the graph.
+ * @author Andrew Goldin
+ */
+public class RoadMap {
+
+	private Poly boundary;
+	private Poly[] obstacles;
+	private VisibilitySweep sweep;
+	private VisibilityGraph graph;
+	private PathFinder finder;
+	private int[] vertexOf;
+	private int[] visible, neighbors, goalNeighbors;
+	private DistanceOracle oracle;
+	private int nodesExpanded;
+	private boolean bidirectional;
+	private PlannerMetrics metrics;
+
+	/**
+	 * Builds the visibility graph between the vertices of the given obstacles.
+	 * @param boundary the outer boundary of the environment
+	 * @param obstacles the (grown) obstacles
+	 */
+	public RoadMap(Poly boundary, Poly[] obstacles) {
+		this(boundary, obstacles, null);
+	}
+
+	/**
+	 * Builds the visibility graph between the vertices of the given obstacles,
+	 * recording the time and size of the build.
+	 * @param boundary the outer boundary of the environment
+	 * @param obstacles the (grown) obstacles
+	 * @param metrics the metrics to add to, or null for none
+	 */
+	public RoadMap(Poly boundary, Poly[] obstacles, PlannerMetrics metrics) {
+		this(boundary, obstacles, metrics, null);
+	}
+
+	/**
+	 * Builds the visibility graph between the vertices of the given obstacles,
+	 * recording the time and size of the build and reporting each vertex swept
+	 * around to the progress, which may cancel the build.
+	 * @param boundary the outer boundary of the environment
+	 * @param obstacles the (grown) obstacles
+	 * @param metrics the metrics to add to, or null for none
+	 * @param progress the progress to report to, or null for none
+	 * @throws java.util.concurrent.CancellationException if the progress is cancelled
+	 */
+	public RoadMap(Poly boundary, Poly[] obstacles, PlannerMetrics metrics, PlannerProgress progress) {
+		long startNanos = System.nanoTime();
+		Object event = PlannerMetrics.beginStage();
+		this.boundary = boundary;
+		this.obstacles = obstacles;
+		sweep = createSweep();
+		int numCandidates = sweep.numCandidates();
+
+		VisibilityGraph.Builder builder = new VisibilityGraph.Builder();
+		vertexOf = new int[numCandidates];
+		for (int i = 2; i < numCandidates; i++) {
+			vertexOf[i] = builder.addVertex(sweep.getCandidate(i));
+		}
+		visible = new int[numCandidates];
+		neighbors = new int[numCandidates];
+		goalNeighbors = new int[numCandidates];
+		// each sweep considers every candidate; each edge is counted from its lower end
+		long found = 0;
+		PlannerProgress.begin(progress, "Visibility", numCandidates - 2);
+		for (int i = 2; i < numCandidates; i++) {
+			int count = sweep.visibleFrom(i, visible);
+			for (int k = 0; k < count; k++) {
+				builder.addEdge(vertexOf[i], vertexOf[visible[k]]);
+				if (visible[k] > i) found++;
+			}
+			PlannerProgress.advance(progress, 1);
+		}
+		PlannerMetrics.endStage(metrics, event, PlannerMetrics.VISIBILITY, startNanos,
+				(long) (numCandidates - 2) * numCandidates, 0, found, 0, 0);
+		startNanos = System.nanoTime();
+		event = PlannerMetrics.beginStage();
+		graph = builder.build();
+		PlannerMetrics.endStage(metrics, event, PlannerMetrics.GRAPH_BUILD, startNanos, 0, 0, 0, 0, 0);
+		finder = new PathFinder(graph);
+		setMetrics(metrics);
+	}
+
+	/**
+	 * Wraps a visibility graph built earlier by a road map over the same boundary
+	 * and obstacles, such as one read back from a GraphCache, without rebuilding it.
+	 * @param boundary the outer boundary of the environment
+	 * @param obstacles the (grown) obstacles
+	 * @param graph the graph of another road map's getGraph over these obstacles
+	 * @param metrics the metrics to add query searches to, or null for none
+	 * @throws IllegalArgumentException if an obstacle vertex is missing from the graph
+	 */
+	public RoadMap(Poly boundary, Poly[] obstacles, VisibilityGraph graph, PlannerMetrics metrics) {
+		this.boundary = boundary;
+		this.obstacles = obstacles;
+		this.graph = graph;
+		sweep = createSweep();
+		int numCandidates = sweep.numCandidates();
+		HashMap<Point, Integer> ids = new HashMap<Point, Integer>();
+		for (int v = 0; v < graph.numVertices(); v++) {
+			ids.put(graph.getVertex(v), v);
+		}
+		vertexOf = new int[numCandidates];
+		for (int i = 2; i < numCandidates; i++) {
+			Integer id = ids.get(sweep.getCandidate(i));
+			if (id == null) throw new IllegalArgumentException("graph has no vertex at " + sweep.getCandidate(i));
+			vertexOf[i] = id;
+		}
+		visible = new int[numCandidates];
+		neighbors = new int[numCandidates];
+		goalNeighbors = new int[numCandidates];
+		finder = new PathFinder(graph);
+		setMetrics(metrics);
+	}
+
+	// shares another road map's graph, with query state of its own
+	private RoadMap(RoadMap other) {
+		boundary = other.boundary;
+		obstacles = other.obstacles;
+		graph = other.graph;
+		vertexOf = other.vertexOf;
+		oracle = other.oracle;
+		sweep = createSweep();
+		visible = new int[sweep.numCandidates()];
+		neighbors = new int[sweep.numCandidates()];
+		goalNeighbors = new int[sweep.numCandidates()];
+		finder = new PathFinder(graph);
+		setMetrics(other.metrics);
+		setBidirectional(other.bidirectional);
+	}
+
+	/**
+	 * Returns a road map that shares this one's graph but has its own query state.
+	 * A road map answers one query at a time, so each thread planning on the same
+	 * obstacles should use its own copy.
+	 * @return a copy of the road map for use on another thread
+	 */
+	public RoadMap copy() {
+		return new RoadMap(this);
+	}
+
+	/**
+	 * Returns the visibility graph between obstacle vertices.
+	 * @return the static visibility graph, without any start or goal
+	 */
+	public VisibilityGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Returns the boundary the road map was built in.
+	 * @return the outer boundary of the environment
+	 */
+	public Poly getBoundary() {
+		return boundary;
+	}
+
+	/**
+	 * Returns the obstacles the road map was built over.
+	 * @return the (grown) obstacles
+	 */
+	public Poly[] getObstacles() {
+		return obstacles;
+	}
+
+	/**
+	 * Answers later queries from the distance tables of an oracle rather than by
+	 * searching. Copies made afterwards share the oracle.
+	 * @param oracle an oracle over this road map's graph, or null to search again
+	 * @throws IllegalArgumentException if the oracle was computed for another graph
+	 */
+	public void setOracle(DistanceOracle oracle) {
+		if (oracle != null && oracle.getGraph() != graph) throw new IllegalArgumentException("oracle is for another graph");
+		this.oracle = oracle;
+	}
+
+	/**
+	 * Returns the oracle answering queries, if any.
+	 * @return the oracle, or null if queries are searched
+	 */
+	public DistanceOracle getOracle() {
+		return oracle;
+	}
+
+	/**
+	 * Computes the shortest path between two points, connecting them to the
+	 * graph for this query only. With an oracle, the vertices the two points
+	 * see are combined through its tables instead of searching the graph.
+	 * @param start the start point
+	 * @param goal the goal point
+	 * @param aStar true to search with A*, false to use dijkstra's algorithm
+	 * @return an ordered list of Points representing the shortest path, or null if there is none
+	 */
+	public Point[] findPath(Point start, Point goal, boolean aStar) {
+		sweep.setFreePoint(0, start);
+		sweep.setFreePoint(1, goal);
+		if (oracle != null) return findPathWithOracle(start, goal);
+
+		// the goal's sweep only reports obstacle vertices; the start's also reports the goal
+		int goalId = finder.attach(goal, neighbors, collectNeighbors(1, -1, neighbors));
+		int startId = finder.attach(start, neighbors, collectNeighbors(0, goalId, neighbors));
+		Point[] path = finder.getShortestPath(startId, goalId, aStar);
+		nodesExpanded = finder.getNodesExpanded();
+		finder.detachAll();
+		return path;
+	}
+
+	/**
+	 * Finds the graph vertices visible from a point that is not in the graph, as a
+	 * query connects its start and goal.
+	 * @param p the point
+	 * @param ids receives the ids of the visible vertices, with room for every vertex
+	 * @return the number of ids written
+	 */
+	public int findVisible(Point p, int[] ids) {
+		sweep.setFreePoint(0, p);
+		int count = sweep.visibleFrom(0, visible);
+		int n = 0;
+		for (int k = 0; k < count; k++) {
+			if (visible[k] != 1) ids[n++] = vertexOf[visible[k]];
+		}
+		return n;
+	}
+
+	/**
+	 * Attaches metrics that accumulate the time and work of each query's search.
+	 * @param metrics the metrics to add to, or null to stop collecting
+	 */
+	public void setMetrics(PlannerMetrics metrics) {
+		this.metrics = metrics;
+		finder.setMetrics(metrics);
+	}
+
+	/**
+	 * Chooses whether later queries search from the start and goal at once.
+	 * Copies made afterwards search the same way.
+	 * @param bidirectional true to search from both ends, false from the start only
+	 */
+	public void setBidirectional(boolean bidirectional) {
+		this.bidirectional = bidirectional;
+		finder.setBidirectional(bidirectional);
+	}
+
+	/**
+	 * Returns the number of nodes expanded by the last query's search, or with an
+	 * oracle the number of its table entries read.
+	 * @return the number of expanded nodes
+	 */
+	public int getNodesExpanded() {
+		return nodesExpanded;
+	}
+
+	// looks a query up in the oracle's tables, counting each entry read as an expanded
+	// node; the start's sweep marks the goal with -1
+	private Point[] findPathWithOracle(Point start, Point goal) {
+		long startNanos = System.nanoTime();
+		Object event = PlannerMetrics.beginStage();
+		int goalCount = collectNeighbors(1, -1, goalNeighbors);
+		int startCount = collectNeighbors(0, -1, neighbors);
+		boolean direct = false;
+		for (int k = 0; k < startCount; k++) {
+			if (neighbors[k] < 0) {
+				direct = true;
+				neighbors[k--] = neighbors[--startCount];
+			}
+		}
+		int[] reads = new int[1];
+		Point[] path = oracle.findPath(start, neighbors, startCount, goal, goalNeighbors, goalCount, direct, reads);
+		nodesExpanded = reads[0];
+		PlannerMetrics.endStage(metrics, event, PlannerMetrics.SEARCH, startNanos, 0, 0, 0, reads[0], 0);
+		return path;
+	}
+
+	// two free points hold each query's start and goal; until then they sit on
+	// the first boundary vertex, where they have no effect on other sweeps
+	private VisibilitySweep createSweep() {
+		Point placeholder = boundary.getPoints()[0];
+		return new VisibilitySweep(boundary, obstacles, new Point[] {placeholder, placeholder});
+	}
+
+	// sweeps around a free point, writing the ids of the vertices it sees to ids
+	private int collectNeighbors(int free, int goalId, int[] ids) {
+		int count = sweep.visibleFrom(free, visible);
+		int n = 0;
+		for (int k = 0; k < count; k++) {
+			int c = visible[k];
+			ids[n++] = c == 1 ? goalId : vertexOf[c];
+		}
+		return n;
+	}
+
+}
\ No newline at end of file
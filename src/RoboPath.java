@@ -1,6 +1,13 @@
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.*;
 
@@ -14,16 +21,26 @@ public class RoboPath extends JFrame {
 	
 	public static final int PIXEL_OFFSET_X = 30, PIXEL_OFFSET_Y = 60;
 	
-	private final float SCALE = 65.0f;
+	private final float SCALE = 65.0f, ZOOM_STEP = 1.25f;
+	private final int BUTTON_PANEL_HEIGHT = 40;
 	private Environment env;
+	private EnvironmentRenderer renderer;
 	private JPanel buttonPanel;
 	private JButton growButton, growSafeButton, graphNormalButton,
 		graphSafeButton, pathButton, saveButton, clearButton;
 	private JTextField saveFileField;
-	private String mapFileName, startGoalFileName;
+	private JCheckBox aStarBox;
+	private JLabel expandedLabel, timeLabel;
+	private JButton cancelButton;
+	private JProgressBar progressBar;
+	private Timer progressTimer;
+	private PlannerProgress progress = new PlannerProgress();
+	private SwingWorker<Void, Void> task;
+	private String mapFileName, startGoalFileName, cacheDir;
 	
 	private boolean mapDrawn, obstaclesGrown, safeGrown,
 		graphDrawn, safeGraphDrawn, pathDrawn;
+	private int dragX, dragY;
 	
 	/**
 	 * Constructs a new RoboPath object with a given map file and start/goal definitions.
@@ -31,6 +48,17 @@ public class RoboPath extends JFrame {
 	 * @param startGoalFile the file defining the start/goal points
 	 */
 	public RoboPath(String mapFile, String startGoalFile) {
+		this(mapFile, startGoalFile, null);
+	}
+	
+	/**
+	 * Constructs a new RoboPath object that keeps grown obstacles and their visibility
+	 * graph in a cache directory, so later runs on the same map skip computing them.
+	 * @param mapFile the file defining the environment
+	 * @param startGoalFile the file defining the start/goal points
+	 * @param cacheDir the directory for GraphCache files, or null for no cache
+	 */
+	public RoboPath(String mapFile, String startGoalFile, String cacheDir) {
 		super("COMS W4733 - HW4 - Robot Path Planner");
 		setSize(new Dimension(1020, 600));
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -39,6 +67,7 @@ public class RoboPath extends JFrame {
 		
 		mapFileName = mapFile;
 		startGoalFileName = startGoalFile;
+		this.cacheDir = cacheDir;
 		openMap();
 		
 		mapDrawn = true;
@@ -50,41 +79,76 @@ public class RoboPath extends JFrame {
 		
 		ActionListener buttonListener = new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
+				if (task != null) {
+					return;
+				}
 				if (e.getActionCommand().equals("Grow Obstacles") && mapDrawn && !obstaclesGrown) {
-					env.growObstacles(false);
-					obstaclesGrown = true;
-					safeGrown = false;
-					pathDrawn = false;
-					repaint();
+					runStage("Grow Obstacles", new Runnable() {
+						public void run() {
+							growObstacles(false);
+						}
+					}, new Runnable() {
+						public void run() {
+							obstaclesGrown = true;
+							safeGrown = false;
+							pathDrawn = false;
+						}
+					});
 				}
 				else if (e.getActionCommand().equals("Grow Safe") && mapDrawn && !safeGrown) {
-					env.growObstacles(true);
-					safeGrown = true;
-					obstaclesGrown = false;
-					pathDrawn = false;
-					repaint();
+					runStage("Grow Safe", new Runnable() {
+						public void run() {
+							growObstacles(true);
+						}
+					}, new Runnable() {
+						public void run() {
+							safeGrown = true;
+							obstaclesGrown = false;
+							pathDrawn = false;
+						}
+					});
 				}
 				else if (e.getActionCommand().equals("Compute VGraph") && mapDrawn
 						&& obstaclesGrown && !graphDrawn) {
-					env.computeVisibilityGraph(env.getGrownObstacles());
-					graphDrawn = true;
-					safeGraphDrawn = false;
-					pathDrawn = false;
-					repaint();
+					runStage("Compute VGraph", new Runnable() {
+						public void run() {
+							env.computeVisibilityGraph(env.getGrownObstacles());
+						}
+					}, new Runnable() {
+						public void run() {
+							graphDrawn = true;
+							safeGraphDrawn = false;
+							pathDrawn = false;
+						}
+					});
 				}
 				else if (e.getActionCommand().equals("Compute Safe VGraph") && mapDrawn
 						&& safeGrown && !safeGraphDrawn) {
-					env.computeVisibilityGraph(env.getSuperGrownObstacles());
-					safeGraphDrawn = true;
-					graphDrawn = false;
-					pathDrawn = false;
-					repaint();
+					runStage("Compute Safe VGraph", new Runnable() {
+						public void run() {
+							env.computeVisibilityGraph(env.getSuperGrownObstacles());
+						}
+					}, new Runnable() {
+						public void run() {
+							safeGraphDrawn = true;
+							graphDrawn = false;
+							pathDrawn = false;
+						}
+					});
 				}
 				else if (e.getActionCommand().equals("Compute Shortest Path") && mapDrawn
 						&& ((obstaclesGrown && graphDrawn) || (safeGrown && safeGraphDrawn)) && !pathDrawn) {
-					env.computeShortestPath();
-					pathDrawn = true;
-					repaint();
+					final boolean aStar = aStarBox.isSelected();
+					runStage("Compute Shortest Path", new Runnable() {
+						public void run() {
+							env.computeShortestPath(aStar);
+						}
+					}, new Runnable() {
+						public void run() {
+							expandedLabel.setText("Expanded: " + env.getNodesExpanded());
+							pathDrawn = true;
+						}
+					});
 				}
 				else if (e.getActionCommand().equals("Write Path To File") && mapDrawn
 						&& ((obstaclesGrown && graphDrawn) || (safeGrown && safeGraphDrawn)) && pathDrawn) {
@@ -98,6 +162,8 @@ public class RoboPath extends JFrame {
 					safeGraphDrawn = false;
 					pathDrawn = false;
 					saveButton.setEnabled(true);
+					expandedLabel.setText("");
+					timeLabel.setText("");
 					openMap();
 					repaint();
 				}
@@ -121,6 +187,26 @@ public class RoboPath extends JFrame {
 		clearButton = new JButton("Clear");
 		clearButton.addActionListener(buttonListener);
 		
+		cancelButton = new JButton("Cancel");
+		cancelButton.setEnabled(false);
+		cancelButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				progress.cancel();
+			}
+		});
+		progressBar = new JProgressBar(0, 1000);
+		progressBar.setStringPainted(true);
+		progressBar.setString("");
+		progressTimer = new Timer(100, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				updateProgressBar();
+			}
+		});
+		
+		aStarBox = new JCheckBox("A*");
+		expandedLabel = new JLabel("");
+		timeLabel = new JLabel("");
+		
 		saveFileField = new JTextField("robot_path.txt");
 		saveFileField.setColumns(8);
 		
@@ -128,12 +214,44 @@ public class RoboPath extends JFrame {
 		buttonPanel.add(graphNormalButton);
 		buttonPanel.add(growSafeButton);
 		buttonPanel.add(graphSafeButton);
+		buttonPanel.add(aStarBox);
 		buttonPanel.add(pathButton);
+		buttonPanel.add(expandedLabel);
 		buttonPanel.add(saveFileField);
 		buttonPanel.add(saveButton);
 		buttonPanel.add(clearButton);
+		buttonPanel.add(progressBar);
+		buttonPanel.add(cancelButton);
+		buttonPanel.add(timeLabel);
 		
 		getContentPane().add(buttonPanel, BorderLayout.SOUTH);
+		
+		// the wheel zooms around the pointer, dragging pans and a double click resets the view
+		MouseAdapter viewListener = new MouseAdapter() {
+			public void mousePressed(MouseEvent e) {
+				dragX = e.getX();
+				dragY = e.getY();
+			}
+			public void mouseDragged(MouseEvent e) {
+				renderer.pan(e.getX() - dragX, e.getY() - dragY);
+				dragX = e.getX();
+				dragY = e.getY();
+				repaint();
+			}
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				renderer.zoom((float) Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getX(), e.getY());
+				repaint();
+			}
+			public void mouseClicked(MouseEvent e) {
+				if (e.getClickCount() == 2) {
+					resetView();
+					repaint();
+				}
+			}
+		};
+		addMouseListener(viewListener);
+		addMouseMotionListener(viewListener);
+		addMouseWheelListener(viewListener);
 	}
 	
 	/**
@@ -142,12 +260,98 @@ public class RoboPath extends JFrame {
 	public void openMap() {
 		try {
 			env = Environment.parseFiles(mapFileName, startGoalFileName);
+			env.setWorkers(Runtime.getRuntime().availableProcessors());
+			renderer = new EnvironmentRenderer(env);
+			resetView();
 		} catch (Exception ex) {
 			ex.printStackTrace();
 		}
 		mapDrawn = true;
 	}
 	
+	// grows the obstacles, reading them and their road map from the cache when there is one
+	private void growObstacles(boolean safe) {
+		if (cacheDir == null) {
+			env.growObstacles(safe);
+			return;
+		}
+		try {
+			GraphCache.prepare(env, mapFileName, safe, cacheDir);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+	
+	// runs a planning stage on a background thread, showing its progress and letting the
+	// Cancel button stop it; onSuccess runs on the event thread if the stage finishes
+	private void runStage(final String name, final Runnable work, final Runnable onSuccess) {
+		progress.reset();
+		env.setProgress(progress);
+		setStageButtonsEnabled(false);
+		cancelButton.setEnabled(true);
+		timeLabel.setText(name + "...");
+		final long startNanos = System.nanoTime();
+		task = new SwingWorker<Void, Void>() {
+			protected Void doInBackground() {
+				work.run();
+				return null;
+			}
+			protected void done() {
+				progressTimer.stop();
+				task = null;
+				cancelButton.setEnabled(false);
+				setStageButtonsEnabled(true);
+				progressBar.setIndeterminate(false);
+				progressBar.setValue(0);
+				progressBar.setString("");
+				try {
+					get();
+					onSuccess.run();
+					timeLabel.setText(name + ": " + (System.nanoTime() - startNanos) / 1000000 + " ms");
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException ex) {
+					if (ex.getCause() instanceof CancellationException) {
+						timeLabel.setText(name + ": cancelled");
+					}
+					else {
+						ex.getCause().printStackTrace();
+						timeLabel.setText(name + ": failed");
+					}
+				}
+				repaint();
+			}
+		};
+		progressTimer.start();
+		task.execute();
+	}
+	
+	// shows the fraction of the running stage done, or an indeterminate bar if it is not known
+	private void updateProgressBar() {
+		float fraction = progress.getFraction();
+		progressBar.setIndeterminate(fraction < 0.0f);
+		if (fraction >= 0.0f) progressBar.setValue((int) (fraction * 1000));
+		progressBar.setString(progress.getStage());
+	}
+	
+	// enables or disables the buttons that start a stage or replace the map
+	private void setStageButtonsEnabled(boolean enabled) {
+		growButton.setEnabled(enabled);
+		growSafeButton.setEnabled(enabled);
+		graphNormalButton.setEnabled(enabled);
+		graphSafeButton.setEnabled(enabled);
+		pathButton.setEnabled(enabled);
+		clearButton.setEnabled(enabled);
+	}
+	
+	/**
+	 * Shows the whole map at the usual scale, or smaller if it does not fit the window.
+	 */
+	public void resetView() {
+		renderer.fit(PIXEL_OFFSET_X, PIXEL_OFFSET_Y, getWidth() - 2 * PIXEL_OFFSET_X,
+				getHeight() - PIXEL_OFFSET_Y - BUTTON_PANEL_HEIGHT, SCALE);
+	}
+	
 	/**
 	 * Paints with the graphics context.
 	 * @param g the graphics context
@@ -155,20 +359,20 @@ public class RoboPath extends JFrame {
 	public void paint(Graphics g) {
 		super.paint(g);
 		if (mapDrawn) {
-			env.draw(g, SCALE);
+			renderer.draw(g, getWidth(), getHeight());
 		}
 	}
 	
 	// main method
 	public static void main(String[] args) throws Exception {
-		if (args.length != 2) {
+		if (args.length != 2 && !(args.length == 4 && args[2].equals("-cache"))) {
 			System.out.println("Invalid agrument list, exiting");
 			System.exit(0);
 		}
 		else {
 			//UIManager.setLookAndFeel("javax.swing.plaf.nimbus.NimbusLookAndFeel");
 			UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-			RoboPath r = new RoboPath(args[0], args[1]);
+			RoboPath r = new RoboPath(args[0], args[1], args.length == 4 ? args[3] : null);
 			r.setVisible(true);
 		}
 	}
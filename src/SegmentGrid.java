@@ -0,0 +1,205 @@
+import java.util.Arrays;
+
+/**
+ * A coarse uniform grid over a set of line segments, listing in each cell the
+ * segments that pass through it, so the segments near a rectangle can be found
+ * without looking at every one. Long segments are only listed in the cells along
+ * their length rather than every cell of their bounding box.
+ * @author Andrew Goldin
+ */
+public class SegmentGrid {
+
+	private static final int MAX_CELLS_PER_SIDE = 64;
+
+	private float[] coords;
+	private int numSegments;
+	private float minX, minY, cellSize;
+	private int cols, rows;
+	private int[] cellStart, cellItems;
+	private int[] stamp;
+	private int query;
+
+	/**
+	 * Builds a grid over a list of segments.
+	 * @param coords the segments, four floats each: x1, y1, x2, y2
+	 * @param numSegments the number of segments in coords
+	 */
+	public SegmentGrid(float[] coords, int numSegments) {
+		this.coords = coords;
+		this.numSegments = numSegments;
+		stamp = new int[numSegments];
+
+		minX = minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		for (int i = 0; i < 2 * numSegments; i++) {
+			minX = Math.min(minX, coords[2 * i]);
+			minY = Math.min(minY, coords[2 * i + 1]);
+			maxX = Math.max(maxX, coords[2 * i]);
+			maxY = Math.max(maxY, coords[2 * i + 1]);
+		}
+		if (numSegments == 0) minX = minY = maxX = maxY = 0.0f;
+
+		// a few segments per cell on average, but never so many cells that a long
+		// segment is listed in a great many of them
+		float width = Math.max(maxX - minX, 1e-3f), height = Math.max(maxY - minY, 1e-3f);
+		int side = (int) Math.ceil(Math.sqrt(numSegments / 4.0));
+		side = Math.max(1, Math.min(side, MAX_CELLS_PER_SIDE));
+		cellSize = Math.max(width, height) / side * 1.0001f;
+		cols = Math.max(1, Math.min((int) (width / cellSize) + 1, MAX_CELLS_PER_SIDE));
+		rows = Math.max(1, Math.min((int) (height / cellSize) + 1, MAX_CELLS_PER_SIDE));
+
+		// count, then fill, the segments in each cell
+		int numCells = cols * rows;
+		cellStart = new int[numCells + 1];
+		int[] fill = null;
+		for (int pass = 0; pass < 2; pass++) {
+			for (int s = 0; s < numSegments; s++) {
+				float x1 = coords[4 * s], y1 = coords[4 * s + 1], x2 = coords[4 * s + 2], y2 = coords[4 * s + 3];
+				int r0 = row(Math.min(y1, y2)), r1 = row(Math.max(y1, y2));
+				for (int r = r0; r <= r1; r++) {
+					// the part of the segment within this row
+					float xa = x1, xb = x2;
+					if (y1 != y2) {
+						float ta = Math.max(0.0f, Math.min(1.0f, (minY + r * cellSize - y1) / (y2 - y1)));
+						float tb = Math.max(0.0f, Math.min(1.0f, (minY + (r + 1) * cellSize - y1) / (y2 - y1)));
+						xa = x1 + ta * (x2 - x1);
+						xb = x1 + tb * (x2 - x1);
+					}
+					int c0 = col(Math.min(xa, xb)), c1 = col(Math.max(xa, xb));
+					for (int c = c0; c <= c1; c++) {
+						if (pass == 0) cellStart[r * cols + c + 1]++;
+						else cellItems[fill[r * cols + c]++] = s;
+					}
+				}
+			}
+			if (pass == 0) {
+				for (int k = 0; k < numCells; k++) cellStart[k + 1] += cellStart[k];
+				cellItems = new int[cellStart[numCells]];
+				fill = cellStart.clone();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of segments in the grid.
+	 * @return the number of segments
+	 */
+	public int numSegments() {
+		return numSegments;
+	}
+
+	/**
+	 * Returns the segment coordinates the grid was built over.
+	 * @return four floats per segment: x1, y1, x2, y2
+	 */
+	public float[] getCoords() {
+		return coords;
+	}
+
+	/**
+	 * Counts the cell entries in the cells overlapping a rectangle. A segment is
+	 * counted once for each such cell it passes through, so this bounds the work
+	 * of a query without doing it.
+	 * @return the number of entries a query over the rectangle would look at
+	 */
+	public int countEntries(float minX, float minY, float maxX, float maxY) {
+		if (isOutside(minX, minY, maxX, maxY)) return 0;
+		int c0 = col(minX), c1 = col(maxX), r0 = row(minY), r1 = row(maxY);
+		int count = 0;
+		for (int r = r0; r <= r1; r++) {
+			count += cellStart[r * cols + c1 + 1] - cellStart[r * cols + c0];
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the segments listed in the cells overlapping a rectangle, each once.
+	 * A grid answers one query at a time.
+	 * @param result receives the segment indices; must hold numSegments() entries
+	 * @return the number of segments found
+	 */
+	public int query(float minX, float minY, float maxX, float maxY, int[] result) {
+		if (isOutside(minX, minY, maxX, maxY)) return 0;
+		if (++query == 0) {
+			Arrays.fill(stamp, 0);
+			query = 1;
+		}
+		int c0 = col(minX), c1 = col(maxX), r0 = row(minY), r1 = row(maxY);
+		int count = 0;
+		for (int r = r0; r <= r1; r++) {
+			for (int k = cellStart[r * cols + c0]; k < cellStart[r * cols + c1 + 1]; k++) {
+				int s = cellItems[k];
+				if (stamp[s] == query) continue;
+				stamp[s] = query;
+				result[count++] = s;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of columns of cells.
+	 * @return the number of columns
+	 */
+	public int getCols() {
+		return cols;
+	}
+
+	/**
+	 * Returns the number of rows of cells.
+	 * @return the number of rows
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Returns the smallest x value covered by the grid.
+	 * @return the x coordinate of the left edge of the first column
+	 */
+	public float getMinX() {
+		return minX;
+	}
+
+	/**
+	 * Returns the smallest y value covered by the grid.
+	 * @return the y coordinate of the top edge of the first row
+	 */
+	public float getMinY() {
+		return minY;
+	}
+
+	/**
+	 * Returns the width and height of a cell.
+	 * @return the cell size
+	 */
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Returns the number of segments passing through a cell.
+	 * @param c the column of the cell
+	 * @param r the row of the cell
+	 * @return the number of segments listed in the cell
+	 */
+	public int cellCount(int c, int r) {
+		return cellStart[r * cols + c + 1] - cellStart[r * cols + c];
+	}
+
+	// whether a rectangle misses the grid entirely
+	private boolean isOutside(float x0, float y0, float x1, float y1) {
+		return numSegments == 0 || x1 < minX || y1 < minY || x0 > minX + cols * cellSize || y0 > minY + rows * cellSize;
+	}
+
+	// column of an x coordinate inside the grid
+	private int col(float x) {
+		return Math.max(0, Math.min(cols - 1, (int) ((x - minX) / cellSize)));
+	}
+
+	// row of a y coordinate inside the grid
+	private int row(float y) {
+		return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellSize)));
+	}
+
+}
\ No newline at end of file
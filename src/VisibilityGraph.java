@@ -0,0 +1,211 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * An undirected visibility graph over interned vertices, stored in compressed
+ * sparse row form: the neighbors of vertex v are targets[offsets[v]] through
+ * targets[offsets[v+1] - 1], with the matching edge lengths in weights.
+ * @author Andrew Goldin
+ */
+public class VisibilityGraph {
+
+	private Point[] vertices;
+	private int[] offsets, targets;
+	private float[] weights;
+
+	// use the Builder, fromEdges or fromArrays to construct a graph
+	private VisibilityGraph(Point[] vertices, int[] offsets, int[] targets, float[] weights) {
+		this.vertices = vertices;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.weights = weights;
+	}
+
+	/**
+	 * Builds a graph from a list of edges, interning their endpoints.
+	 * @param edges the edges of the graph, in either or both directions
+	 * @return a new VisibilityGraph containing every edge in both directions
+	 */
+	public static VisibilityGraph fromEdges(Edge[] edges) {
+		Builder b = new Builder();
+		for (int i = 0; i < edges.length; i++) {
+			b.addEdge(b.addVertex(edges[i].p), b.addVertex(edges[i].q));
+		}
+		return b.build();
+	}
+
+	/**
+	 * Wraps arrays laid out as getOffsets, getTargets and getWeights return them,
+	 * such as those of a graph saved to disk, without copying them.
+	 * @param vertices the point of each vertex
+	 * @param offsets the row offsets, of length vertices.length + 1
+	 * @param targets the target vertex of every directed edge
+	 * @param weights the length of every directed edge
+	 * @return a graph over the given arrays
+	 * @throws IllegalArgumentException if the arrays do not describe a graph
+	 */
+	public static VisibilityGraph fromArrays(Point[] vertices, int[] offsets, int[] targets, float[] weights) {
+		int n = vertices.length;
+		if (offsets.length != n + 1 || offsets[0] != 0 || offsets[n] != targets.length || weights.length != targets.length) {
+			throw new IllegalArgumentException("graph arrays do not match");
+		}
+		for (int v = 0; v < n; v++) {
+			if (offsets[v + 1] < offsets[v]) throw new IllegalArgumentException("graph offsets decrease at vertex " + v);
+		}
+		for (int k = 0; k < targets.length; k++) {
+			if (targets[k] < 0 || targets[k] >= n) throw new IllegalArgumentException("graph edge " + k + " has no target");
+		}
+		return new VisibilityGraph(vertices, offsets, targets, weights);
+	}
+
+	/**
+	 * Returns the number of vertices in the graph.
+	 * @return the number of vertices
+	 */
+	public int numVertices() {
+		return vertices.length;
+	}
+
+	/**
+	 * Returns the number of undirected edges in the graph.
+	 * @return the number of edges
+	 */
+	public int numEdges() {
+		return targets.length / 2;
+	}
+
+	/**
+	 * Returns the point for a vertex id.
+	 * @param v the vertex id
+	 * @return the vertex location
+	 */
+	public Point getVertex(int v) {
+		return vertices[v];
+	}
+
+	/**
+	 * Returns the id of the vertex at a given point.
+	 * @param p the point to look up
+	 * @return the vertex id, or -1 if no vertex lies at the point
+	 */
+	public int indexOf(Point p) {
+		for (int i = 0; i < vertices.length; i++) {
+			if (vertices[i].equals(p)) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the row offsets; vertex v's edges occupy [offsets[v], offsets[v+1]).
+	 * @return the offsets array, of length numVertices() + 1
+	 */
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+	/**
+	 * Returns the target vertex of every directed edge.
+	 * @return the targets array
+	 */
+	public int[] getTargets() {
+		return targets;
+	}
+
+	/**
+	 * Returns the length of every directed edge.
+	 * @return the weights array, parallel to the targets array
+	 */
+	public float[] getWeights() {
+		return weights;
+	}
+
+	/**
+	 * Accumulates vertices and edges for a VisibilityGraph. Vertices at equal
+	 * points are interned to a single id; self loops and repeated edges are dropped.
+	 */
+	public static class Builder {
+
+		private HashMap<Point, Integer> ids = new HashMap<Point, Integer>();
+		private Point[] vertices = new Point[16];
+		private int numVertices = 0;
+		private int[] pairs = new int[32];
+		private int numPairs = 0;
+
+		/**
+		 * Adds a vertex, or finds the existing vertex at the same point.
+		 * @param p the vertex location
+		 * @return the id of the vertex
+		 */
+		public int addVertex(Point p) {
+			Integer id = ids.get(p);
+			if (id != null) return id;
+			if (numVertices == vertices.length) vertices = Arrays.copyOf(vertices, numVertices * 2);
+			vertices[numVertices] = p;
+			ids.put(p, numVertices);
+			return numVertices++;
+		}
+
+		/**
+		 * Adds an undirected edge between two vertices.
+		 * @param a the id of the first vertex
+		 * @param b the id of the second vertex
+		 */
+		public void addEdge(int a, int b) {
+			if (a == b) return;
+			if (2 * numPairs + 2 > pairs.length) pairs = Arrays.copyOf(pairs, pairs.length * 2);
+			pairs[2 * numPairs] = a;
+			pairs[2 * numPairs + 1] = b;
+			numPairs++;
+		}
+
+		/**
+		 * Lays the accumulated edges out in compressed sparse row form.
+		 * @return the finished graph
+		 */
+		public VisibilityGraph build() {
+			int n = numVertices;
+			int[] degree = new int[n + 1];
+			for (int k = 0; k < 2 * numPairs; k++) {
+				degree[pairs[k]]++;
+			}
+			int[] start = new int[n + 1];
+			for (int v = 0; v < n; v++) {
+				start[v + 1] = start[v] + degree[v];
+			}
+			int[] fill = Arrays.copyOf(start, n);
+			int[] rawTargets = new int[2 * numPairs];
+			for (int k = 0; k < numPairs; k++) {
+				int a = pairs[2 * k], b = pairs[2 * k + 1];
+				rawTargets[fill[a]++] = b;
+				rawTargets[fill[b]++] = a;
+			}
+
+			// sort each row so repeated edges are adjacent, then compact
+			int[] offsets = new int[n + 1];
+			int[] targets = new int[rawTargets.length];
+			int count = 0;
+			for (int v = 0; v < n; v++) {
+				Arrays.sort(rawTargets, start[v], start[v + 1]);
+				offsets[v] = count;
+				for (int k = start[v]; k < start[v + 1]; k++) {
+					if (k == start[v] || rawTargets[k] != rawTargets[k - 1]) {
+						targets[count++] = rawTargets[k];
+					}
+				}
+			}
+			offsets[n] = count;
+			targets = Arrays.copyOf(targets, count);
+
+			Point[] points = Arrays.copyOf(vertices, n);
+			float[] weights = new float[count];
+			for (int v = 0; v < n; v++) {
+				for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+					weights[k] = Point.computeDistance(points[v], points[targets[k]]);
+				}
+			}
+			return new VisibilityGraph(points, offsets, targets, weights);
+		}
+
+	}
+
+}
\ No newline at end of file
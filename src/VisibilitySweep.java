@@ -0,0 +1,470 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+/**
+ * Computes visibility between points with a rotational plane sweep (Lee's
+ * algorithm). For each source vertex, the other vertices are visited in angular
+ * order while the obstacle edges cut by the current ray are kept in a balanced
+ * tree ordered by distance from the source, so each sweep costs O(N log N).
+ * Edges of overlapping obstacles that cross each other are handled by extra
+ * sweep events at their crossing points, where the two edges swap places.
+ * @author Andrew Goldin
+ */
+public class VisibilitySweep {
+
+	private static final double TIE_TOLERANCE = 1e-12;
+	private static final double DISTANCE_TOLERANCE = 1e-6;
+
+	private Point[] candidates;
+	private float[] px, py;
+	private int numFree, numCandidates, numPoints;
+	private int[] segA, segB;
+	private int[] incidentOffsets, incidentSegs;
+	private int[] crossA, crossB;
+	private double[] crossX, crossY;
+	private ObstacleGrid grid;
+
+	// per-sweep state
+	private double vx, vy, rayX, rayY, nearest;
+	private boolean after;
+	private boolean[] skip, active;
+	private int[] startOf;
+	private double[] ex, ey;
+	private long[] order;
+	private int[] events, swapped;
+	private TreeSet<Integer> status;
+
+	/**
+	 * Prepares a sweep over the vertices of the given obstacles. The candidate
+	 * vertices are the free points followed by every obstacle vertex; the
+	 * boundary and obstacles block visibility but the free points do not.
+	 * @param boundary the outer boundary of the environment
+	 * @param obstacles the (grown) obstacles
+	 * @param freePoints extra points, such as the start and goal, to connect
+	 */
+	public VisibilitySweep(Poly boundary, Poly[] obstacles, Point[] freePoints) {
+		// candidate points first, then boundary points, which only block
+		ArrayList<Point> all = new ArrayList<Point>();
+		for (int i = 0; i < freePoints.length; i++) all.add(freePoints[i]);
+		numFree = freePoints.length;
+		for (int i = 0; i < obstacles.length; i++) all.addAll(Arrays.asList(obstacles[i].getPoints()));
+		numCandidates = all.size();
+		all.addAll(Arrays.asList(boundary.getPoints()));
+		numPoints = all.size();
+		candidates = all.subList(0, numCandidates).toArray(new Point[numCandidates]);
+		px = new float[numPoints];
+		py = new float[numPoints];
+		for (int i = 0; i < numPoints; i++) {
+			px[i] = all.get(i).x;
+			py[i] = all.get(i).y;
+		}
+
+		// polygon edges, oriented the same way as Poly's own edges
+		ArrayList<int[]> segs = new ArrayList<int[]>();
+		int base = freePoints.length;
+		for (int i = 0; i < obstacles.length; i++) {
+			addPolygonSegments(segs, base, obstacles[i].numPoints());
+			base += obstacles[i].numPoints();
+		}
+		addPolygonSegments(segs, base, boundary.numPoints());
+		segA = new int[segs.size()];
+		segB = new int[segs.size()];
+		for (int s = 0; s < segA.length; s++) {
+			segA[s] = segs.get(s)[0];
+			segB[s] = segs.get(s)[1];
+		}
+
+		// segments incident to each point
+		incidentOffsets = new int[numPoints + 1];
+		for (int s = 0; s < segA.length; s++) {
+			incidentOffsets[segA[s] + 1]++;
+			incidentOffsets[segB[s] + 1]++;
+		}
+		for (int i = 0; i < numPoints; i++) incidentOffsets[i + 1] += incidentOffsets[i];
+		incidentSegs = new int[2 * segA.length];
+		int[] fill = Arrays.copyOf(incidentOffsets, numPoints);
+		for (int s = 0; s < segA.length; s++) {
+			incidentSegs[fill[segA[s]]++] = s;
+			incidentSegs[fill[segB[s]]++] = s;
+		}
+
+		findCrossings();
+
+		grid = new ObstacleGrid(boundary, obstacles);
+
+		int numEvents = numPoints + crossA.length;
+		skip = new boolean[segA.length];
+		active = new boolean[segA.length];
+		startOf = new int[segA.length];
+		ex = new double[numEvents];
+		ey = new double[numEvents];
+		order = new long[numEvents];
+		events = new int[numEvents];
+		swapped = new int[2 * crossA.length];
+		status = new TreeSet<Integer>(new Comparator<Integer>() {
+			public int compare(Integer s1, Integer s2) {
+				return compareSegments(s1, s2);
+			}
+		});
+	}
+
+	/**
+	 * Returns the number of candidate vertices.
+	 * @return the number of free points plus the number of obstacle vertices
+	 */
+	public int numCandidates() {
+		return numCandidates;
+	}
+
+	/**
+	 * Returns a candidate vertex.
+	 * @param i the candidate index
+	 * @return the point of the candidate
+	 */
+	public Point getCandidate(int i) {
+		return candidates[i];
+	}
+
+	/**
+	 * Moves one of the free points. Free points do not block visibility, so the
+	 * sweep's obstacle data stays valid and the point can be moved for each query.
+	 * @param i the index of the free point
+	 * @param p the new location of the free point
+	 */
+	public void setFreePoint(int i, Point p) {
+		candidates[i] = p;
+		px[i] = p.x;
+		py[i] = p.y;
+	}
+
+	/**
+	 * Finds the candidates with a larger index than v that are visible from
+	 * candidate v, so that each visible pair is reported exactly once.
+	 * @param v the index of the source candidate
+	 * @param out receives the visible candidate indices; must hold numCandidates() entries
+	 * @return the number of visible candidates written to out
+	 */
+	public int visibleFrom(int v, int[] out) {
+		return sweep(v, v + 1, out);
+	}
+
+	// adds the closed chain of edges for a polygon whose points start at base
+	private void addPolygonSegments(ArrayList<int[]> segs, int base, int n) {
+		segs.add(new int[] {base + n - 1, base});
+		for (int i = 1; i < n; i++) {
+			segs.add(new int[] {base + i - 1, base + i});
+		}
+	}
+
+	// finds every pair of segments that properly cross, sweeping along x to prune pairs
+	private void findCrossings() {
+		int n = segA.length;
+		long[] byMinX = new long[n];
+		for (int s = 0; s < n; s++) {
+			float minX = Math.min(px[segA[s]], px[segB[s]]);
+			byMinX[s] = ((long) sortableBits(minX) << 32) | s;
+		}
+		Arrays.sort(byMinX);
+		ArrayList<double[]> found = new ArrayList<double[]>();
+		for (int i = 0; i < n; i++) {
+			int s = (int) byMinX[i];
+			float maxX = Math.max(px[segA[s]], px[segB[s]]);
+			for (int j = i + 1; j < n; j++) {
+				int t = (int) byMinX[j];
+				if (Math.min(px[segA[t]], px[segB[t]]) > maxX) break;
+				double[] x = properCrossing(s, t);
+				if (x != null) found.add(new double[] {s, t, x[0], x[1]});
+			}
+		}
+		crossA = new int[found.size()];
+		crossB = new int[found.size()];
+		crossX = new double[found.size()];
+		crossY = new double[found.size()];
+		for (int k = 0; k < crossA.length; k++) {
+			double[] c = found.get(k);
+			crossA[k] = (int) c[0];
+			crossB[k] = (int) c[1];
+			crossX[k] = c[2];
+			crossY[k] = c[3];
+		}
+	}
+
+	// returns the crossing point of two segments, or null unless their interiors cross
+	private double[] properCrossing(int s, int t) {
+		double ax = px[segA[s]], ay = py[segA[s]], bx = px[segB[s]], by = py[segB[s]];
+		double cx = px[segA[t]], cy = py[segA[t]], dx = px[segB[t]], dy = py[segB[t]];
+		double d1 = cross(bx - ax, by - ay, cx - ax, cy - ay);
+		double d2 = cross(bx - ax, by - ay, dx - ax, dy - ay);
+		double d3 = cross(dx - cx, dy - cy, ax - cx, ay - cy);
+		double d4 = cross(dx - cx, dy - cy, bx - cx, by - cy);
+		if (d1 * d2 >= 0.0 || d3 * d4 >= 0.0) return null;
+		double r = d3 / (d3 - d4);
+		return new double[] {ax + r * (bx - ax), ay + r * (by - ay)};
+	}
+
+	// sweeps around candidate self, writing visible candidates with index >= minTarget to out
+	private int sweep(int self, int minTarget, int[] out) {
+		vx = px[self];
+		vy = py[self];
+		status.clear();
+
+		// classify segments relative to the source
+		for (int s = 0; s < segA.length; s++) {
+			int a = segA[s], b = segB[s];
+			double ax = px[a] - vx, ay = py[a] - vy, bx = px[b] - vx, by = py[b] - vy;
+			double o = cross(ax, ay, bx, by);
+			skip[s] = o == 0.0 || (ax == 0.0 && ay == 0.0) || (bx == 0.0 && by == 0.0);
+			active[s] = false;
+			startOf[s] = o > 0.0 ? a : b;
+		}
+
+		// gather and sort events by angle, then by distance
+		int numEvents = 0;
+		nearest = Double.MAX_VALUE;
+		for (int i = 0; i < numPoints; i++) {
+			double dx = px[i] - vx, dy = py[i] - vy;
+			if (dx == 0.0 && dy == 0.0) continue;
+			ex[i] = dx;
+			ey[i] = dy;
+			nearest = Math.min(nearest, Math.sqrt(dx * dx + dy * dy));
+			order[numEvents++] = ((long) Float.floatToIntBits(pseudoAngle(dx, dy)) << 32) | i;
+		}
+		for (int k = 0; k < crossA.length; k++) {
+			double dx = crossX[k] - vx, dy = crossY[k] - vy;
+			if (skip[crossA[k]] || skip[crossB[k]] || (dx == 0.0 && dy == 0.0)) continue;
+			ex[numPoints + k] = dx;
+			ey[numPoints + k] = dy;
+			order[numEvents++] = ((long) Float.floatToIntBits(pseudoAngle(dx, dy)) << 32) | (numPoints + k);
+		}
+		Arrays.sort(order, 0, numEvents);
+		for (int i = 0; i < numEvents; i++) {
+			events[i] = (int) order[i];
+		}
+		// the float keys only approximate the order, so finish with exact comparisons
+		for (int i = 1; i < numEvents; i++) {
+			int e = events[i];
+			int j = i - 1;
+			while (j >= 0 && compareEvents(events[j], e) > 0) {
+				events[j + 1] = events[j];
+				j--;
+			}
+			events[j + 1] = e;
+		}
+
+		// edges cut by the initial ray along the positive x axis
+		rayX = 1.0;
+		rayY = 0.0;
+		after = false;
+		for (int s = 0; s < segA.length; s++) {
+			if (skip[s]) continue;
+			int start = startOf[s], end = start == segA[s] ? segB[s] : segA[s];
+			if (compareAngles(end, start) < 0) {
+				status.add(s);
+				active[s] = true;
+			}
+		}
+
+		int count = 0;
+		int groupStart = 0;
+		while (groupStart < numEvents) {
+			int groupEnd = groupStart + 1;
+			while (groupEnd < numEvents && compareAngles(events[groupStart], events[groupEnd]) == 0) {
+				groupEnd++;
+			}
+			rayX = ex[events[groupStart]];
+			rayY = ey[events[groupStart]];
+
+			// remove edges that end on this ray, and crossing edges that swap order here
+			after = false;
+			for (int i = groupStart; i < groupEnd; i++) {
+				int e = events[i];
+				if (e >= numPoints) continue;
+				for (int k = incidentOffsets[e]; k < incidentOffsets[e + 1]; k++) {
+					int s = incidentSegs[k];
+					if (!skip[s] && startOf[s] != e && active[s]) {
+						remove(s);
+					}
+				}
+			}
+			int numSwapped = 0;
+			for (int i = groupStart; i < groupEnd; i++) {
+				int e = events[i];
+				if (e < numPoints) continue;
+				int k = e - numPoints;
+				if (active[crossA[k]]) {
+					remove(crossA[k]);
+					swapped[numSwapped++] = crossA[k];
+				}
+				if (active[crossB[k]]) {
+					remove(crossB[k]);
+					swapped[numSwapped++] = crossB[k];
+				}
+			}
+			after = true;
+			for (int i = 0; i < numSwapped; i++) {
+				status.add(swapped[i]);
+				active[swapped[i]] = true;
+			}
+
+			// test the candidates on this ray
+			for (int i = groupStart; i < groupEnd; i++) {
+				int w = events[i];
+				if (w >= minTarget && w < numCandidates && isVisible(self, w)
+						&& !vertexOnSegment(self, w, i, numEvents)) {
+					out[count++] = w;
+				}
+			}
+
+			// add edges that start on this ray
+			for (int i = groupStart; i < groupEnd; i++) {
+				int e = events[i];
+				if (e >= numPoints) continue;
+				for (int k = incidentOffsets[e]; k < incidentOffsets[e + 1]; k++) {
+					int s = incidentSegs[k];
+					if (!skip[s] && startOf[s] == e && !active[s]) {
+						status.add(s);
+						active[s] = true;
+					}
+				}
+			}
+			groupStart = groupEnd;
+		}
+		return count;
+	}
+
+	// removes a segment from the status; if rounding has left it out of order, it is
+	// not found by the tree search and is removed by scanning instead
+	private void remove(int s) {
+		active[s] = false;
+		if (status.remove(s)) return;
+		for (Iterator<Integer> it = status.iterator(); it.hasNext();) {
+			if (it.next() == s) {
+				it.remove();
+				return;
+			}
+		}
+	}
+
+	// checks the status edges nearer than w, then whether the midpoint is inside an obstacle
+	private boolean isVisible(int self, int w) {
+		float x1 = px[self], y1 = py[self], x2 = px[w], y2 = py[w];
+		double wx = ex[w], wy = ey[w];
+		for (Integer s : status) {
+			int a = segA[s], b = segB[s];
+			double dx = px[b] - px[a], dy = py[b] - py[a];
+			double t = cross(px[a] - vx, py[a] - vy, dx, dy) / cross(wx, wy, dx, dy);
+			if (t > 1.0 + DISTANCE_TOLERANCE) break;
+			if (Edge.crosses(x1, y1, x2, y2, px[a], py[a], px[b], py[b])) return false;
+		}
+		return !grid.anyContains((x1 + x2) / 2.0f, (y1 + y2) / 2.0f);
+	}
+
+	// scans outward in angle from w for obstacle or boundary vertices lying on the segment
+	// to w; Edge.containsPoint allows a small tolerance, so vertices just off the ray count
+	private boolean vertexOnSegment(int self, int w, int index, int numEvents) {
+		float x1 = px[self], y1 = py[self], x2 = px[w], y2 = py[w];
+		double wx = ex[w], wy = ey[w];
+		double wlen = Math.sqrt(wx * wx + wy * wy);
+		double maxSine = 2.0 * Edge.EPSILON / (nearest * wlen);
+		for (int dir = -1; dir <= 1; dir += 2) {
+			for (int step = 0; step < numEvents; step++) {
+				int u = events[Math.floorMod(index + dir * step, numEvents)];
+				double ux = ex[u], uy = ey[u];
+				double ulen = Math.sqrt(ux * ux + uy * uy);
+				if (ux * wx + uy * wy < 0.0 || Math.abs(cross(ux, uy, wx, wy)) > maxSine * ulen * wlen) break;
+				if (u >= numFree && u < numPoints && Edge.containsPoint(x1, y1, x2, y2, px[u], py[u])) return true;
+			}
+		}
+		return false;
+	}
+
+	// orders two status segments by distance along the current ray
+	private int compareSegments(int s1, int s2) {
+		if (s1 == s2) return 0;
+		double d1x = px[segB[s1]] - px[segA[s1]], d1y = py[segB[s1]] - py[segA[s1]];
+		double d2x = px[segB[s2]] - px[segA[s2]], d2y = py[segB[s2]] - py[segA[s2]];
+		double t1 = rayParameter(s1), t2 = rayParameter(s2);
+		// a segment nearly parallel to the ray meets it at a poorly conditioned distance
+		double tolerance = TIE_TOLERANCE * Math.max(Math.abs(t1), Math.abs(t2))
+				* (1.0 / sine(d1x, d1y) + 1.0 / sine(d2x, d2y));
+		if (Math.abs(t1 - t2) > tolerance) {
+			return t1 < t2 ? -1 : 1;
+		}
+		// the segments meet on the ray: order by which is nearer just after (or before) it
+		double c1 = cot(d1x, d1y), c2 = cot(d2x, d2y);
+		if (c1 != c2) return (c1 < c2) == after ? -1 : 1;
+		return s1 < s2 ? -1 : 1;
+	}
+
+	// absolute sine of the angle between the ray and a segment direction
+	private double sine(double dx, double dy) {
+		return Math.abs(cross(rayX, rayY, dx, dy)) / Math.sqrt((rayX * rayX + rayY * rayY) * (dx * dx + dy * dy));
+	}
+
+	// where a segment meets the current ray, in multiples of the ray vector; an endpoint
+	// lying on the ray is used directly so that segments sharing it tie exactly
+	private double rayParameter(int s) {
+		double ax = px[segA[s]] - vx, ay = py[segA[s]] - vy;
+		double bx = px[segB[s]] - vx, by = py[segB[s]] - vy;
+		double rr = rayX * rayX + rayY * rayY;
+		if (cross(rayX, rayY, ax, ay) == 0.0) return (rayX * ax + rayY * ay) / rr;
+		if (cross(rayX, rayY, bx, by) == 0.0) return (rayX * bx + rayY * by) / rr;
+		return cross(ax, ay, bx - ax, by - ay) / cross(rayX, rayY, bx - ax, by - ay);
+	}
+
+	// cotangent of the angle from the ray to a segment direction taken counterclockwise
+	private double cot(double dx, double dy) {
+		double c = cross(rayX, rayY, dx, dy);
+		if (c < 0.0) {
+			dx = -dx;
+			dy = -dy;
+			c = -c;
+		}
+		return (rayX * dx + rayY * dy) / c;
+	}
+
+	// orders events by angle around the source, then by distance
+	private int compareEvents(int e1, int e2) {
+		int c = compareAngles(e1, e2);
+		if (c != 0) return c;
+		double d1 = ex[e1] * ex[e1] + ey[e1] * ey[e1];
+		double d2 = ex[e2] * ex[e2] + ey[e2] * ey[e2];
+		return d1 < d2 ? -1 : (d1 > d2 ? 1 : 0);
+	}
+
+	// orders events by angle around the source, counterclockwise from the positive x axis
+	private int compareAngles(int e1, int e2) {
+		int h1 = half(ex[e1], ey[e1]), h2 = half(ex[e2], ey[e2]);
+		if (h1 != h2) return h1 - h2;
+		double c = cross(ex[e1], ey[e1], ex[e2], ey[e2]);
+		return c > 0.0 ? -1 : (c < 0.0 ? 1 : 0);
+	}
+
+	// 0 for angles in [0, 180) degrees, 1 for [180, 360)
+	private static int half(double dx, double dy) {
+		return (dy < 0.0 || (dy == 0.0 && dx < 0.0)) ? 1 : 0;
+	}
+
+	// a value in [0, 4) that increases with angle, without trigonometry
+	private static float pseudoAngle(double dx, double dy) {
+		double p = dy / (Math.abs(dx) + Math.abs(dy));
+		if (dx < 0.0) p = 2.0 - p;
+		else if (dy < 0.0) p = 4.0 + p;
+		return (float) p + 0.0f;
+	}
+
+	// maps a float to an int whose signed order matches the float order
+	private static int sortableBits(float f) {
+		int bits = Float.floatToIntBits(f);
+		return bits < 0 ? bits ^ 0x7fffffff : bits;
+	}
+
+	// 2D cross product
+	private static double cross(double ax, double ay, double bx, double by) {
+		return ax * by - ay * bx;
+	}
+
+}
\ No newline at end of file
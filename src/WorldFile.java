@@ -0,0 +1,281 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes world files: the boundary polygon followed by the obstacles.
+ * The text format gives the number of polygons, then for each polygon its number
+ * of points and one "x y" line per point. The binary format holds the same
+ * polygons as a header, the point count of every polygon, then each polygon's
+ * x coordinates followed by its y coordinates, all as big-endian 4-byte values:
+ * <pre>
+ *   int magic ("RPW1"), int version, int polygons, int total points
+ *   int points[polygons]
+ *   float x[points[0]], float y[points[0]], float x[points[1]], ...
+ * </pre>
+ * Both are read from a memory-mapped file. Text is parsed byte by byte without
+ * building strings, and binary coordinates are copied into place in bulk.
+ * @author Andrew Goldin
+ */
+public class WorldFile {
+
+	private static final int MAGIC = 0x52505731;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 16;
+
+	// powers of ten exact in a double, for parsing plain decimals
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+	private ByteBuffer buffer;
+	private int pos;
+
+	private WorldFile(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Reads a world file in either format, telling them apart by the binary header.
+	 * @param file the file to read
+	 * @return the boundary followed by the obstacles
+	 * @throws IOException if the file cannot be read or is not a world file
+	 */
+	public static Poly[] read(String file) throws IOException {
+		ByteBuffer buffer = map(file);
+		if (buffer.limit() >= HEADER_BYTES && buffer.getInt(0) == MAGIC) return new WorldFile(buffer).readBinary();
+		return new WorldFile(buffer).readText();
+	}
+
+	/**
+	 * Writes polygons in the binary format.
+	 * @param file the file to write
+	 * @param world the boundary followed by the obstacles
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeBinary(String file, Poly[] world) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writePolygons(out, world);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes a list of polygons as the binary format lays them out after its magic
+	 * number and version: the polygon and point totals, each polygon's point count,
+	 * then each polygon's coordinates.
+	 * @param out the stream to write to
+	 * @param polys the polygons to write
+	 * @throws IOException if the stream cannot be written
+	 */
+	static void writePolygons(DataOutputStream out, Poly[] polys) throws IOException {
+		int total = 0;
+		for (Poly p : polys) total += p.numPoints();
+		out.writeInt(polys.length);
+		out.writeInt(total);
+		for (Poly p : polys) out.writeInt(p.numPoints());
+		for (Poly p : polys) {
+			for (float x : p.getXPoints()) out.writeFloat(x);
+			for (float y : p.getYPoints()) out.writeFloat(y);
+		}
+	}
+
+	/**
+	 * Reads a list of polygons written by writePolygons, starting at the buffer's
+	 * position and leaving the position just after them.
+	 * @param buffer the buffer to read from
+	 * @return the polygons
+	 * @throws IOException if the polygons run past the end of the buffer
+	 */
+	static Poly[] readPolygons(ByteBuffer buffer) throws IOException {
+		int start = buffer.position();
+		if (buffer.remaining() < 8) throw new IOException("file is truncated or corrupt");
+		int numPolys = buffer.getInt(start), total = buffer.getInt(start + 4);
+		long end = start + 8 + 4L * numPolys + 8L * total;
+		if (numPolys < 0 || total < 0 || end > buffer.limit()) throw new IOException("file is truncated or corrupt");
+		buffer.position(start + 8);
+		IntBuffer counts = buffer.asIntBuffer();
+		buffer.position(start + 8 + 4 * numPolys);
+		FloatBuffer coords = buffer.asFloatBuffer();
+		Poly[] polys = new Poly[numPolys];
+		long seen = 0;
+		for (int i = 0; i < numPolys; i++) {
+			int n = counts.get(i);
+			seen += n;
+			if (n < 1 || seen > total) throw new IOException("file is truncated or corrupt");
+			float[] xs = new float[n], ys = new float[n];
+			coords.get(xs);
+			coords.get(ys);
+			polys[i] = new Poly(xs, ys, n, false);
+		}
+		buffer.position((int) end);
+		return polys;
+	}
+
+	/**
+	 * Writes polygons in the text format.
+	 * @param file the file to write
+	 * @param world the boundary followed by the obstacles
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeText(String file, Poly[] world) throws IOException {
+		PrintWriter p = new PrintWriter(new BufferedWriter(new FileWriter(file), 1 << 16));
+		p.println(world.length);
+		for (Poly poly : world) {
+			float[] xs = poly.getXPoints(), ys = poly.getYPoints();
+			p.println(xs.length);
+			for (int i = 0; i < xs.length; i++) {
+				p.println(xs[i] + " " + ys[i]);
+			}
+		}
+		p.close();
+		if (p.checkError()) throw new IOException("could not write " + file);
+	}
+
+	// maps a whole file read-only
+	static ByteBuffer map(String file) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+		try {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	// reads the polygons of a binary world, checking the header and size first
+	private Poly[] readBinary() throws IOException {
+		int version = buffer.getInt(4);
+		if (version != VERSION) throw new IOException("unsupported world file version " + version);
+		// the polygon and point totals open the part readPolygons reads
+		buffer.position(8);
+		Poly[] world = readPolygons(buffer);
+		if (buffer.hasRemaining()) throw new IOException("world file is truncated or corrupt");
+		return world;
+	}
+
+	// reads the polygons of a text world
+	private Poly[] readText() throws IOException {
+		int numPolys = nextInt();
+		Poly[] world = new Poly[numPolys];
+		for (int i = 0; i < numPolys; i++) {
+			int n = nextInt();
+			if (n < 1) throw new IOException("polygon " + i + " has no points");
+			float[] xs = new float[n], ys = new float[n];
+			for (int j = 0; j < n; j++) {
+				xs[j] = nextFloat();
+				ys[j] = nextFloat();
+			}
+			world[i] = new Poly(xs, ys, n, false);
+		}
+		return world;
+	}
+
+	// moves to the start of the next token, failing at the end of the file
+	private void skipSpace() throws IOException {
+		int limit = buffer.limit();
+		while (pos < limit) {
+			byte b = buffer.get(pos);
+			if (b != ' ' && b != '\n' && b != '\r' && b != '\t') return;
+			pos++;
+		}
+		throw new IOException("world file ends early");
+	}
+
+	// whether a byte can end a number
+	private boolean isEnd(int at) {
+		if (at >= buffer.limit()) return true;
+		byte b = buffer.get(at);
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+	}
+
+	// reads a non-negative decimal integer
+	private int nextInt() throws IOException {
+		skipSpace();
+		int start = pos;
+		long value = 0;
+		while (!isEnd(pos)) {
+			byte b = buffer.get(pos);
+			if (b < '0' || b > '9' || value > Integer.MAX_VALUE) throw new IOException("bad count at byte " + start);
+			value = value * 10 + (b - '0');
+			pos++;
+		}
+		if (value > Integer.MAX_VALUE) throw new IOException("bad count at byte " + start);
+		return (int) value;
+	}
+
+	// reads a float. A plain decimal of up to fifteen significant digits and 22 places
+	// is a quotient of two exact doubles, so dividing rounds it correctly to a double;
+	// rounding that to a float gives the same as Float.parseFloat unless the double
+	// lands exactly halfway between two floats. Anything else (exponents, long
+	// mantissas, ties) is handed to Float.parseFloat.
+	private float nextFloat() throws IOException {
+		skipSpace();
+		int start = pos;
+		boolean negative = false;
+		byte b = buffer.get(pos);
+		if (b == '-' || b == '+') {
+			negative = b == '-';
+			pos++;
+		}
+		long mantissa = 0;
+		int digits = 0, places = -1;
+		boolean simple = true, anyDigits = false;
+		for (; !isEnd(pos); pos++) {
+			b = buffer.get(pos);
+			if (b >= '0' && b <= '9') {
+				anyDigits = true;
+				if (mantissa != 0 || b != '0') digits++;
+				if (digits > 15) simple = false;
+				else mantissa = mantissa * 10 + (b - '0');
+				if (places >= 0) places++;
+			}
+			else if (b == '.' && places < 0) places = 0;
+			else simple = false;
+		}
+		int length = pos - start;
+		if (simple && anyDigits && places <= 22) {
+			double value = places > 0 ? mantissa / POWERS_OF_TEN[places] : mantissa;
+			long bits = Double.doubleToRawLongBits(value);
+			if (value == 0.0 || (value >= Float.MIN_NORMAL && (bits & 0x1FFFFFFFL) != 0x10000000L)) {
+				return (float) (negative ? -value : value);
+			}
+		}
+		byte[] token = new byte[length];
+		for (int i = 0; i < length; i++) token[i] = buffer.get(start + i);
+		try {
+			return Float.parseFloat(new String(token, "US-ASCII"));
+		}
+		catch (NumberFormatException e) {
+			throw new IOException("bad coordinate at byte " + start);
+		}
+	}
+
+	// main method, converting between the text and binary formats
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("Usage: java WorldFile <input world file> <output world file> [-text]");
+			System.exit(0);
+		}
+		boolean text = false;
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].equals("-text")) text = true;
+			else {
+				System.out.println("Unknown option " + args[i] + ", exiting");
+				System.exit(0);
+			}
+		}
+		Poly[] world = read(args[0]);
+		if (text) writeText(args[1], world);
+		else writeBinary(args[1], world);
+	}
+
+}
\ No newline at end of file